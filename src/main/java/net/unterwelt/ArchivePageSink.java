@@ -0,0 +1,79 @@
+package net.unterwelt;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Write the converted pages into a single tar, tar.gz or zip archive instead of a file per page.
+ *
+ * <p>The pages are encoded on the write stage's threads, but added to the archive by a single
+ * writer in the order of the pages, so the archive's entries are always in the same order. Each
+ * page gets the path its file would have in the pages directory, e.g. "namespace/page.txt".
+ */
+class ArchivePageSink implements PageSink {
+
+    private final Path archive;
+    private final Path dokuWikiPath;
+    private final ArchiveWriter writer;
+    private final IoThrottle ioThrottle;
+    private final Map<Path, byte[]> encodedPages = new ConcurrentHashMap<>();
+
+    /**
+     * Create the archive.
+     *
+     * @param archive the archive's file; its directory must exist
+     * @param dokuWikiPath the output directory the DokuWikiWriter puts the pages' paths in
+     * @throws IOException if the archive can't be created
+     */
+    ArchivePageSink(Path archive, Path dokuWikiPath) throws IOException {
+        this(archive, dokuWikiPath, IoThrottle.unlimited());
+    }
+
+    /**
+     * Create the archive, written no faster than the throttle allows.
+     *
+     * @param archive the archive's file; its directory must exist
+     * @param dokuWikiPath the output directory the DokuWikiWriter puts the pages' paths in
+     * @param ioThrottle limits the writing of the archive
+     * @throws IOException if the archive can't be created
+     */
+    ArchivePageSink(Path archive, Path dokuWikiPath, IoThrottle ioThrottle) throws IOException {
+        this.archive = archive;
+        this.dokuWikiPath = dokuWikiPath;
+        this.ioThrottle = ioThrottle;
+        this.writer = ArchiveWriter.open(archive.getFileName().toString(),
+                ioThrottle.throttle(Files.newOutputStream(archive)), System.currentTimeMillis());
+    }
+
+    @Override
+    public void write(Path outputPath, String content) {
+        encodedPages.put(outputPath, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void commit(Path outputPath) throws IOException {
+        byte[] content = encodedPages.remove(outputPath);
+        if (content == null) {
+            throw new IllegalStateException("Page was not written: " + outputPath);
+        }
+        ioThrottle.write(1, 0);
+        writer.addFile(getEntryName(outputPath), content);
+    }
+
+    private String getEntryName(Path outputPath) {
+        StringJoiner entryName = new StringJoiner("/");
+        for (Path element : dokuWikiPath.relativize(outputPath)) {
+            entryName.add(element.toString());
+        }
+        return entryName.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+        System.out.println("Archive written: " + archive.toAbsolutePath());
+    }
+}
@@ -0,0 +1,260 @@
+package net.unterwelt;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * Read the current versions of the MoinMoin pages straight from a backup archive (tar, tar.gz or
+ * zip) of the pages directory, without extracting it.
+ *
+ * <p>The archive is read once from start to end. A page is passed on when the archive's entries
+ * move on to the next page directory, with the content of its current revision only. So only one
+ * page's revisions are kept in memory at a time, and only until its file 'current' was found.
+ * This expects the entries of a page directory to be stored together, as tar and zip do. The
+ * pages are passed on in the archive's order.
+ *
+ * <p>The page directories are the directories right below the pages directory, which is named
+ * "pages" or is the archive's top level. The first page found fixes the pages directory. Files
+ * named like a page's files deeper down, e.g. an attachment called "current", are ignored.
+ */
+class ArchivePageSource implements PageSource {
+
+    private static final String CURRENT = "current";
+    private static final String REVISIONS = "revisions";
+    private static final String PAGES = "pages";
+
+    private final Path archive;
+    private final PageNameDecoder pageNameDecoder;
+    private final RevisionReader revisionReader;
+    private final IoThrottle ioThrottle;
+
+    /**
+     * @param archive the archive of the MoinMoin pages directory; the pages directory can be
+     * anywhere in the archive, e.g. "wiki/data/pages"
+     * @param inputCharset the charset for the file contents
+     * @param malformedInputAction REPORT to skip pages with content that is not valid in the
+     * charset, REPLACE to replace the invalid bytes
+     */
+    ArchivePageSource(Path archive, Charset inputCharset, CodingErrorAction malformedInputAction) {
+        this(archive, inputCharset, malformedInputAction, IoThrottle.unlimited());
+    }
+
+    /**
+     * @param ioThrottle limits the reading of the archive
+     */
+    ArchivePageSource(Path archive, Charset inputCharset, CodingErrorAction malformedInputAction,
+                      IoThrottle ioThrottle) {
+        this.archive = archive;
+        this.pageNameDecoder = new PageNameDecoder(inputCharset);
+        this.revisionReader = new RevisionReader(inputCharset, malformedInputAction);
+        this.ioThrottle = ioThrottle;
+    }
+
+    @Override
+    public void findPages(EntryConsumer consumer) throws InterruptedException {
+        String archiveName = archive.getFileName().toString();
+        try (ArchiveReader reader = ArchiveReader.open(archiveName,
+                ioThrottle.throttle(Files.newInputStream(archive)))) {
+            String pagesDir = null;
+            PendingPage pendingPage = null;
+            for (String path = reader.nextFile(); path != null; path = reader.nextFile()) {
+                PagePath pagePath = PagePath.parse(path);
+                if (pagePath == null || pagesDir != null && !pagesDir.equals(pagePath.pagesDir)) {
+                    continue;  // e.g. edit-log, attachments or cache files
+                }
+                pagesDir = pagePath.pagesDir;
+
+                if (pendingPage != null && !pendingPage.pageDir.equals(pagePath.pageDir)) {
+                    consumer.accept(pendingPage.toEntry());
+                    pendingPage = null;
+                }
+                if (pendingPage == null) {
+                    pendingPage = new PendingPage(pagePath.pageDir, pagePath.dirName);
+                }
+
+                if (pagePath.revision == null) {
+                    pendingPage.setCurrent(readContent(reader));
+                } else if (pendingPage.needsRevision(pagePath.revision)) {
+                    pendingPage.addRevision(pagePath.revision, readContent(reader));
+                }
+            }
+
+            if (pendingPage != null) {
+                consumer.accept(pendingPage.toEntry());
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error: Could not read " + archive.toAbsolutePath() + " (" + e
+                    + ")");
+        }
+    }
+
+    /**
+     * Read the current entry's content. Each read entry counts as a file operation.
+     */
+    private byte[] readContent(ArchiveReader reader) throws IOException {
+        ioThrottle.read(1, 0);
+        return reader.readContent();
+    }
+
+    private Page createPage(String dirName, byte[] revision, Consumer<String> messages) {
+        if (revision.length == 0) {
+            messages.accept(String.format("Skipped (no content): %s", dirName));
+            return null;
+        }
+
+        List<String> pathElements;
+        try {
+            pathElements = pageNameDecoder.decode(dirName);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            messages.accept(String.format("Skipped (invalid name): %s (%s)", dirName,
+                    e.getMessage()));
+            return null;
+        }
+
+        String pageName = pathElements.get(pathElements.size() - 1);
+        List<String> superPages = pathElements.subList(0, pathElements.size() - 1);
+        Page page = new Page(superPages, pageName, revision.length,
+                () -> revisionReader.decode(ByteBuffer.wrap(revision)));
+        try {
+            page.getPageContent();
+        } catch (UncheckedIOException e) {
+            messages.accept(e.getCause().toString());
+            messages.accept(String.format("Skipped (no content): %s", dirName));
+            return null;
+        }
+
+        messages.accept(String.format("Created: %s - %s", page.getSuperPages(), page.getName()));
+        return page;
+    }
+
+    /**
+     * The position of a page's file in the archive: "{pagesDir}/{dirName}/current" or
+     * "{pagesDir}/{dirName}/revisions/{revision}".
+     */
+    private static class PagePath {
+        private final String pagesDir;
+        private final String pageDir;
+        private final String dirName;
+        private final String revision;  // null for 'current'
+
+        private PagePath(String pagesDir, String dirName, String revision) {
+            this.pagesDir = pagesDir;
+            this.pageDir = pagesDir.isEmpty() ? dirName : pagesDir + "/" + dirName;
+            this.dirName = dirName;
+            this.revision = revision;
+        }
+
+        /**
+         * @return the page's path or null if the file is not the current revision's number or a
+         * revision of a directory right below a pages directory
+         */
+        private static PagePath parse(String path) {
+            String[] elements = path.split("/");
+            int last = elements.length - 1;
+            int dirNameIndex;
+            String revision;
+            if (last >= 1 && elements[last].equals(CURRENT)) {
+                dirNameIndex = last - 1;
+                revision = null;
+            } else if (last >= 2 && elements[last - 1].equals(REVISIONS)) {
+                dirNameIndex = last - 2;
+                revision = elements[last];
+            } else {
+                return null;
+            }
+            if (!isPagesDir(elements, dirNameIndex)) {
+                return null;
+            }
+            String pagesDir = String.join("/", Arrays.asList(elements).subList(0, dirNameIndex));
+            return new PagePath(pagesDir, elements[dirNameIndex], revision);
+        }
+
+        /**
+         * @return true if the elements before the index are a pages directory: one named "pages"
+         * or the archive's top level
+         */
+        private static boolean isPagesDir(String[] elements, int dirNameIndex) {
+            return dirNameIndex == 0 || elements[dirNameIndex - 1].equals(PAGES)
+                    || dirNameIndex == 1 && elements[0].equals(".");
+        }
+    }
+
+    /**
+     * The files of the page directory that is being read.
+     */
+    private class PendingPage {
+        private final String pageDir;
+        private final String dirName;
+        private String currentRevision;  // null until 'current' was read
+        private final Map<String, byte[]> revisions = new HashMap<>();
+
+        private PendingPage(String pageDir, String dirName) {
+            this.pageDir = pageDir;
+            this.dirName = dirName;
+        }
+
+        private void setCurrent(byte[] current) {
+            int end = 0;
+            while (end < current.length && current[end] != '\n' && current[end] != '\r') {
+                end++;
+            }
+            currentRevision = new String(current, 0, end, StandardCharsets.ISO_8859_1);
+            revisions.keySet().retainAll(Set.of(currentRevision));
+        }
+
+        /**
+         * Until 'current' was read, every revision might be the current one.
+         */
+        private boolean needsRevision(String revision) {
+            return currentRevision == null || currentRevision.equals(revision);
+        }
+
+        private void addRevision(String revision, byte[] content) {
+            revisions.put(revision, content);
+        }
+
+        private Entry toEntry() {
+            if (currentRevision != null && currentRevision.isEmpty()) {
+                return new ArchiveEntry(dirName, null,
+                        "File 'current' in " + pageDir + " has no content.");
+            }
+            byte[] revision = currentRevision != null ? revisions.get(currentRevision) : null;
+            if (revision == null) {
+                return new ArchiveEntry(dirName, null,
+                        pageDir + " NOT FOUND (page might be deleted)");
+            }
+            return new ArchiveEntry(dirName, revision, null);
+        }
+    }
+
+    private class ArchiveEntry implements Entry {
+        private final String dirName;
+        private final byte[] revision;
+        private final String problem;
+
+        private ArchiveEntry(String dirName, byte[] revision, String problem) {
+            this.dirName = dirName;
+            this.revision = revision;
+            this.problem = problem;
+        }
+
+        @Override
+        public String getDirName() {
+            return dirName;
+        }
+
+        @Override
+        public Page read(Consumer<String> messages) {
+            if (problem != null) {
+                messages.accept(problem);
+                messages.accept(String.format("Skipped (no content): %s", dirName));
+                return null;
+            }
+            return createPage(dirName, revision, messages);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package net.unterwelt;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Read the entries of a tar or zip archive one after another, without extracting them.
+ */
+abstract class ArchiveReader implements Closeable {
+
+    /**
+     * Open the archive. The format is chosen by the file name: ".zip", ".tar", ".tar.gz" or
+     * ".tgz".
+     *
+     * @param name the archive's file name
+     * @param in the archive's content
+     * @return the reader
+     * @throws IllegalArgumentException if the format is not supported
+     * @throws IOException if a gzip compressed archive can't be read
+     */
+    static ArchiveReader open(String name, InputStream in) throws IOException {
+        String lowerCaseName = name.toLowerCase(Locale.ROOT);
+        if (lowerCaseName.endsWith(".zip")) {
+            return new Zip(in);
+        }
+        if (lowerCaseName.endsWith(".tar.gz") || lowerCaseName.endsWith(".tgz")) {
+            return new Tar(new GZIPInputStream(in, 64 * 1024));
+        }
+        if (lowerCaseName.endsWith(".tar")) {
+            return new Tar(in);
+        }
+        throw new IllegalArgumentException("Unsupported archive: " + name);
+    }
+
+    /**
+     * Check if the file name has the extension of a supported archive.
+     *
+     * @param name the file name
+     * @return true if the file can be opened as an archive
+     */
+    static boolean isArchive(String name) {
+        String lowerCaseName = name.toLowerCase(Locale.ROOT);
+        return lowerCaseName.endsWith(".zip") || lowerCaseName.endsWith(".tar")
+                || lowerCaseName.endsWith(".tar.gz") || lowerCaseName.endsWith(".tgz");
+    }
+
+    /**
+     * Move to the next regular file. The rest of the current entry is skipped.
+     *
+     * @return the file's path in the archive (separated by '/') or null at the end
+     * @throws IOException if the archive can't be read
+     */
+    abstract String nextFile() throws IOException;
+
+    /**
+     * Read the current file's content.
+     *
+     * @return the content
+     * @throws IOException if the archive can't be read
+     */
+    abstract byte[] readContent() throws IOException;
+
+    private static class Zip extends ArchiveReader {
+        private final ZipInputStream in;
+
+        private Zip(InputStream in) {
+            this.in = new ZipInputStream(new BufferedInputStream(in), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        String nextFile() throws IOException {
+            ZipEntry entry = in.getNextEntry();
+            while (entry != null && entry.isDirectory()) {
+                entry = in.getNextEntry();
+            }
+            return entry != null ? entry.getName() : null;
+        }
+
+        @Override
+        byte[] readContent() throws IOException {
+            return in.readAllBytes();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads ustar archives with the GNU and pax extensions for long names.
+     */
+    private static class Tar extends ArchiveReader {
+        private static final int BLOCK_SIZE = 512;
+        private static final int NAME_OFFSET = 0;
+        private static final int NAME_LENGTH = 100;
+        private static final int SIZE_OFFSET = 124;
+        private static final int SIZE_LENGTH = 12;
+        private static final int TYPE_OFFSET = 156;
+        private static final int MAGIC_OFFSET = 257;
+        private static final int PREFIX_OFFSET = 345;
+        private static final int PREFIX_LENGTH = 155;
+
+        private final InputStream in;
+        private final byte[] header = new byte[BLOCK_SIZE];
+        private long remaining = 0;  // the current file's bytes that were not read yet
+        private long padding = 0;  // the bytes after the current file up to the next block
+
+        private Tar(InputStream in) {
+            this.in = new BufferedInputStream(in, 64 * 1024);
+        }
+
+        @Override
+        String nextFile() throws IOException {
+            String longName = null;
+            while (true) {
+                skipFully(remaining + padding);
+                if (!readHeader()) {
+                    return null;
+                }
+
+                long size = parseSize();
+                remaining = size;
+                padding = (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE;
+
+                char type = (char) header[TYPE_OFFSET];
+                if (type == 'L') {
+                    longName = toName(readContent(), 0, (int) size);
+                } else if (type == 'x') {
+                    String path = parsePaxPath(readContent());
+                    longName = path != null ? path : longName;
+                } else if (type == '0' || type == '\0' || type == '7') {
+                    return longName != null ? longName : parseName();
+                } else {
+                    longName = null;  // directories, links and other entries are skipped
+                }
+            }
+        }
+
+        @Override
+        byte[] readContent() throws IOException {
+            if (remaining > Integer.MAX_VALUE) {
+                throw new IOException("Archive entry too big: " + remaining + " bytes");
+            }
+            byte[] content = in.readNBytes((int) remaining);
+            if (content.length < remaining) {
+                throw new EOFException("Archive ends inside an entry");
+            }
+            remaining = 0;
+            return content;
+        }
+
+        /**
+         * @return false at the end of the archive
+         */
+        private boolean readHeader() throws IOException {
+            int read = in.readNBytes(header, 0, BLOCK_SIZE);
+            if (read == 0) {
+                return false;
+            }
+            if (read < BLOCK_SIZE) {
+                throw new EOFException("Archive ends inside a header");
+            }
+            for (byte b : header) {
+                if (b != 0) {
+                    return true;
+                }
+            }
+            return false;  // an empty block marks the end
+        }
+
+        private String parseName() {
+            String name = toName(header, NAME_OFFSET, NAME_LENGTH);
+            boolean ustar = new String(header, MAGIC_OFFSET, 5, StandardCharsets.US_ASCII)
+                    .equals("ustar");
+            if (ustar && header[PREFIX_OFFSET] != 0) {
+                return toName(header, PREFIX_OFFSET, PREFIX_LENGTH) + "/" + name;
+            }
+            return name;
+        }
+
+        /**
+         * Sizes are octal numbers, big sizes are binary numbers marked by the highest bit.
+         */
+        private long parseSize() throws IOException {
+            if ((header[SIZE_OFFSET] & 0x80) != 0) {
+                long size = 0;
+                for (int i = SIZE_OFFSET + 1; i < SIZE_OFFSET + SIZE_LENGTH; i++) {
+                    size = (size << 8) | (header[i] & 0xff);
+                }
+                return size;
+            }
+
+            long size = 0;
+            for (int i = SIZE_OFFSET; i < SIZE_OFFSET + SIZE_LENGTH; i++) {
+                byte b = header[i];
+                if (b == 0 || b == ' ') {
+                    if (size > 0) {
+                        break;
+                    }
+                    continue;
+                }
+                if (b < '0' || b > '7') {
+                    throw new IOException("Invalid size in archive header");
+                }
+                size = size * 8 + (b - '0');
+            }
+            return size;
+        }
+
+        /**
+         * Find the path in the records of a pax header, e.g. "30 path=some/long/name\n".
+         */
+        private static String parsePaxPath(byte[] records) {
+            int position = 0;
+            while (position < records.length) {
+                int space = position;
+                while (space < records.length && records[space] != ' ') {
+                    space++;
+                }
+                int length;
+                try {
+                    length = Integer.parseInt(new String(records, position, space - position,
+                            StandardCharsets.US_ASCII));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                if (length <= 0 || position + length > records.length) {
+                    return null;
+                }
+
+                String record = new String(records, space + 1, position + length - space - 2,
+                        StandardCharsets.UTF_8);
+                if (record.startsWith("path=")) {
+                    return record.substring("path=".length());
+                }
+                position += length;
+            }
+            return null;
+        }
+
+        private static String toName(byte[] bytes, int offset, int maxLength) {
+            int end = offset;
+            while (end < offset + maxLength && bytes[end] != 0) {
+                end++;
+            }
+            return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+        }
+
+        private void skipFully(long count) throws IOException {
+            long toSkip = count;
+            while (toSkip > 0) {
+                long skipped = in.skip(toSkip);
+                if (skipped <= 0) {
+                    if (in.read() < 0) {
+                        throw new EOFException("Archive ends inside an entry");
+                    }
+                    skipped = 1;
+                }
+                toSkip -= skipped;
+            }
+            remaining = 0;
+            padding = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package net.unterwelt;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Write files into a tar or zip archive one after another.
+ */
+abstract class ArchiveWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Create the archive. The format is chosen by the file name like in ArchiveReader.
+     *
+     * @param name the archive's file name
+     * @param out receives the archive
+     * @param modificationTime the files' modification time in milliseconds since the epoch
+     * @return the writer
+     * @throws IllegalArgumentException if the format is not supported
+     * @throws IOException if the gzip header can't be written
+     */
+    static ArchiveWriter open(String name, OutputStream out, long modificationTime)
+            throws IOException {
+        String lowerCaseName = name.toLowerCase(Locale.ROOT);
+        OutputStream bufferedOut = new BufferedOutputStream(out, BUFFER_SIZE);
+        if (lowerCaseName.endsWith(".zip")) {
+            return new Zip(bufferedOut, modificationTime);
+        }
+        if (lowerCaseName.endsWith(".tar.gz") || lowerCaseName.endsWith(".tgz")) {
+            return new Tar(new GZIPOutputStream(bufferedOut, BUFFER_SIZE), modificationTime);
+        }
+        if (lowerCaseName.endsWith(".tar")) {
+            return new Tar(bufferedOut, modificationTime);
+        }
+        throw new IllegalArgumentException("Unsupported archive: " + name);
+    }
+
+    /**
+     * Add a file.
+     *
+     * @param path the file's path in the archive, separated by '/'
+     * @param content the file's content
+     * @throws IOException if the archive can't be written
+     */
+    abstract void addFile(String path, byte[] content) throws IOException;
+
+    private static class Zip extends ArchiveWriter {
+        private final ZipOutputStream out;
+        private final long modificationTime;
+
+        private Zip(OutputStream out, long modificationTime) {
+            this.out = new ZipOutputStream(out, StandardCharsets.UTF_8);
+            this.modificationTime = modificationTime;
+        }
+
+        @Override
+        void addFile(String path, byte[] content) throws IOException {
+            ZipEntry entry = new ZipEntry(path);
+            entry.setTime(modificationTime);
+            out.putNextEntry(entry);
+            out.write(content);
+            out.closeEntry();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes ustar archives; names longer than 100 bytes get a GNU long name entry, which GNU tar,
+     * bsdtar and ArchiveReader understand.
+     */
+    private static class Tar extends ArchiveWriter {
+        private static final int BLOCK_SIZE = 512;
+        private static final int NAME_LENGTH = 100;
+        private static final byte[] LONG_NAME = "././@LongLink".getBytes(StandardCharsets.US_ASCII);
+
+        private final OutputStream out;
+        private final long modificationTime;
+        private final byte[] header = new byte[BLOCK_SIZE];
+
+        private Tar(OutputStream out, long modificationTime) {
+            this.out = out;
+            this.modificationTime = modificationTime / 1000;
+        }
+
+        @Override
+        void addFile(String path, byte[] content) throws IOException {
+            byte[] name = path.getBytes(StandardCharsets.UTF_8);
+            if (name.length > NAME_LENGTH) {
+                byte[] longName = Arrays.copyOf(name, name.length + 1);  // ends with NUL
+                writeEntry(LONG_NAME, 'L', longName);
+            }
+            writeEntry(name, '0', content);
+        }
+
+        private void writeEntry(byte[] name, char type, byte[] content) throws IOException {
+            Arrays.fill(header, (byte) 0);
+            System.arraycopy(name, 0, header, 0, Math.min(name.length, NAME_LENGTH));
+            putOctal(100, 8, 0644);  // mode
+            putOctal(108, 8, 0);  // user
+            putOctal(116, 8, 0);  // group
+            putOctal(124, 12, content.length);
+            putOctal(136, 12, modificationTime);
+            header[156] = (byte) type;
+            putAscii(257, "ustar\0" + "00");
+
+            Arrays.fill(header, 148, 156, (byte) ' ');
+            int checksum = 0;
+            for (byte b : header) {
+                checksum += b & 0xff;
+            }
+            putOctal(148, 7, checksum);
+
+            out.write(header);
+            out.write(content);
+            out.write(new byte[(BLOCK_SIZE - content.length % BLOCK_SIZE) % BLOCK_SIZE]);
+        }
+
+        /**
+         * Put the number as octal digits with leading zeros, followed by NUL.
+         */
+        private void putOctal(int offset, int length, long value) {
+            String digits = Long.toOctalString(value);
+            String padded = "0".repeat(Math.max(0, length - 1 - digits.length())) + digits;
+            putAscii(offset, padded + "\0");
+        }
+
+        private void putAscii(int offset, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(bytes, 0, header, offset, bytes.length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.write(new byte[2 * BLOCK_SIZE]);  // the end of the archive
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package net.unterwelt;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Adjust the number of workers of the pipeline's stages while the conversion is running, to
+ * find the settings with the most converted pages per second (hill climbing).
+ *
+ * <p>In each interval one stage gets more or fewer workers. If fewer pages were written in the
+ * next interval, the change is undone and the stage will be changed in the other direction next
+ * time. A stage whose workers were running on a CPU most of the time (rather than waiting for the
+ * file system) doesn't get more workers than there are processors.
+ */
+class ConcurrencyController {
+
+    private static final double TOLERANCE = 0.05;
+    private static final double CPU_BOUND_RATIO = 0.9;
+    private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+
+    private final List<TunedStage> stages = new ArrayList<>();
+    private final LongSupplier writtenPages;
+    private final long intervalMillis;
+    private ScheduledExecutorService scheduler;
+
+    private long lastWrittenPages = 0;
+    private long lastTime;
+    private double lastThroughput = 0;
+    private int stageIndex = -1;
+    private TunedStage changedStage = null;
+    private int previousParallelism;
+
+    /**
+     * @param writtenPages the number of written pages so far
+     * @param intervalMillis the time between two adjustments
+     */
+    ConcurrencyController(LongSupplier writtenPages, long intervalMillis) {
+        this.writtenPages = writtenPages;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Add a stage to adjust.
+     *
+     * @param stage the stage
+     * @param maxParallelism the maximum number of workers
+     * @param pendingPages the maximum number of pending pages for a number of workers
+     */
+    void addStage(PipelineStage stage, int maxParallelism, IntUnaryOperator pendingPages) {
+        stages.add(new TunedStage(stage, maxParallelism, pendingPages));
+    }
+
+    void start() {
+        lastTime = System.nanoTime();
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                WorkerThreads.daemonThreads("concurrency-controller"));
+        scheduler.scheduleAtFixedRate(this::adjust, intervalMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Get the current number of workers of each stage.
+     *
+     * @return the stages' names and numbers of workers
+     */
+    Map<String, Integer> getSettings() {
+        Map<String, Integer> settings = new LinkedHashMap<>();
+        for (TunedStage tunedStage : stages) {
+            settings.put(tunedStage.stage.getName(), tunedStage.stage.getParallelism());
+        }
+        return settings;
+    }
+
+    synchronized void adjust() {
+        long now = System.nanoTime();
+        long written = writtenPages.getAsLong();
+        double throughput = (written - lastWrittenPages) * 1e9 / Math.max(now - lastTime, 1);
+        lastWrittenPages = written;
+        lastTime = now;
+        if (throughput == 0) {
+            return;  // nothing to compare, e.g. while the first pages are read
+        }
+
+        if (changedStage != null && throughput < lastThroughput * (1 - TOLERANCE)) {
+            changedStage.setParallelism(previousParallelism);
+            changedStage.direction = -changedStage.direction;
+        }
+        lastThroughput = throughput;
+
+        stageIndex = (stageIndex + 1) % stages.size();
+        changeStage(stages.get(stageIndex));
+    }
+
+    private void changeStage(TunedStage tunedStage) {
+        int parallelism = tunedStage.stage.getParallelism();
+        double cpuRatio = tunedStage.stage.takeCpuRatio();
+        if (tunedStage.direction > 0 && cpuRatio >= CPU_BOUND_RATIO && parallelism >= PROCESSORS) {
+            tunedStage.direction = -1;
+        }
+
+        int step = Math.max(1, parallelism / 4);
+        int newParallelism = Math.max(1, Math.min(tunedStage.maxParallelism,
+                parallelism + tunedStage.direction * step));
+        if (newParallelism == parallelism) {
+            tunedStage.direction = -tunedStage.direction;
+            changedStage = null;
+            return;
+        }
+
+        previousParallelism = parallelism;
+        changedStage = tunedStage;
+        tunedStage.setParallelism(newParallelism);
+    }
+
+    private static class TunedStage {
+        private final PipelineStage stage;
+        private final int maxParallelism;
+        private final IntUnaryOperator pendingPages;
+        private int direction = 1;
+
+        private TunedStage(PipelineStage stage, int maxParallelism,
+                           IntUnaryOperator pendingPages) {
+            this.stage = stage;
+            this.maxParallelism = maxParallelism;
+            this.pendingPages = pendingPages;
+        }
+
+        private void setParallelism(int parallelism) {
+            stage.setParallelism(parallelism, pendingPages.applyAsInt(parallelism));
+        }
+    }
+}
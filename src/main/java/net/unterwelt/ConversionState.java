@@ -0,0 +1,81 @@
+package net.unterwelt;
+
+import java.util.*;
+import net.unterwelt.rules.*;
+
+/**
+ * The state of a conversion that is carried from one line to the next. The rules are shared, so
+ * each Parser keeps the state of its current conversion here. The state is reset before each
+ * page, so formats that are not closed on one page don't continue on the next page.
+ */
+class ConversionState {
+
+    private final List<FormatState> formatStates = new ArrayList<>();
+    private final List<FormatState> activeFormats = new ArrayList<>();
+    private NoFormattingRule activeNoFormattingRule = null;
+    private String noFormattingOutputStartToken = null;
+    private final TableState tableState = new TableState();
+
+    /**
+     * @param lineContentRules the rules to keep a FormatState for
+     */
+    ConversionState(List<LineContentRule> lineContentRules) {
+        for (LineContentRule rule : lineContentRules) {
+            formatStates.add(new FormatState(rule));
+        }
+    }
+
+    /**
+     * Get the state of each LineContentRule.
+     *
+     * @return the states in the same order as the rules
+     */
+    List<FormatState> getFormatStates() {
+        return formatStates;
+    }
+
+    /**
+     * Get the active formats.
+     *
+     * @return the active formats in order of activation
+     */
+    List<FormatState> getActiveFormats() {
+        return activeFormats;
+    }
+
+    NoFormattingRule getActiveNoFormattingRule() {
+        return activeNoFormattingRule;
+    }
+
+    /**
+     * Get the output start token the active no-formatting rule was started with, which is needed
+     * to reopen it on the next line.
+     *
+     * @return the output start token or null if no no-formatting rule is active
+     */
+    String getNoFormattingOutputStartToken() {
+        return noFormattingOutputStartToken;
+    }
+
+    void setActiveNoFormattingRule(NoFormattingRule rule, String outputStartToken) {
+        activeNoFormattingRule = rule;
+        noFormattingOutputStartToken = outputStartToken;
+    }
+
+    TableState getTableState() {
+        return tableState;
+    }
+
+    /**
+     * Forget all formats and table cells, so the next page starts without any.
+     */
+    void reset() {
+        for (FormatState formatState : formatStates) {
+            formatState.reset();
+        }
+        activeFormats.clear();
+        activeNoFormattingRule = null;
+        noFormattingOutputStartToken = null;
+        tableState.reset();
+    }
+}
@@ -6,7 +6,7 @@ import java.nio.file.*;
 import java.util.*;
 import net.unterwelt.util.*;
 
-public class DokuWikiWriter {
+public class DokuWikiWriter implements PageSink {
 
     private static final String SUFFIX = ".txt";
 
@@ -14,6 +14,11 @@ public class DokuWikiWriter {
     private final boolean addFixme;
     private final boolean cleanTags;
     private final Transliterator transliterator;
+    private final Set<ParserOption> parserOptions;
+    private final ParserPool parserPool;
+    private final OutputDirectories outputDirectories = new OutputDirectories();
+
+    private PageFileWriter pageFileWriter = new PageFileWriter(PageFileWriter.Sync.NONE);
 
     /**
      * Create a DokuWikiWriter.
@@ -22,11 +27,19 @@ public class DokuWikiWriter {
      * @param addFixme true if "fix me" warning should be added to the pages
      */
     DokuWikiWriter(Path dokuWikiPath, boolean addFixme, boolean cleanTags) {
-        this.dokuWikiPath = dokuWikiPath;
-        this.addFixme = addFixme;
-        this.cleanTags = cleanTags;
+        this(dokuWikiPath, addFixme, cleanTags, EnumSet.noneOf(ParserOption.class));
+    }
 
-        this.transliterator = new Transliterator();
+    /**
+     * Create a DokuWikiWriter.
+     *
+     * @param dokuWikiPath the complete path to the output directory, e.g. dokuwiki/data/pages
+     * @param addFixme true if "fix me" warning should be added to the pages
+     * @param parserOptions the options for the Parser
+     */
+    DokuWikiWriter(Path dokuWikiPath, boolean addFixme, boolean cleanTags,
+                   Set<ParserOption> parserOptions) {
+        this(dokuWikiPath, addFixme, cleanTags, new Transliterator(), parserOptions);
     }
 
     /**
@@ -38,16 +51,44 @@ public class DokuWikiWriter {
      * @throws IOException due to reading from file
      */
     DokuWikiWriter(Path dokuWikiPath, boolean addFixme, boolean cleanTags, Path newMappings) throws IOException {
+        this(dokuWikiPath, addFixme, cleanTags, newMappings, EnumSet.noneOf(ParserOption.class));
+    }
+
+    /**
+     * Create a DokuWikiWriter.
+     *
+     * @param dokuWikiPath the complete path to the output directory, e.g. dokuwiki/data/pages
+     * @param addFixme true if "fix me" warning should be added to the pages
+     * @param newMappings Path to a file with new mappings that are added to the existing mappings
+     * @param parserOptions the options for the Parser
+     * @throws IOException due to reading from file
+     */
+    DokuWikiWriter(Path dokuWikiPath, boolean addFixme, boolean cleanTags, Path newMappings,
+                   Set<ParserOption> parserOptions) throws IOException {
+        this(dokuWikiPath, addFixme, cleanTags, new Transliterator(newMappings), parserOptions);
+    }
+
+    private DokuWikiWriter(Path dokuWikiPath, boolean addFixme, boolean cleanTags,
+                           Transliterator transliterator, Set<ParserOption> parserOptions) {
         this.dokuWikiPath = dokuWikiPath;
         this.addFixme = addFixme;
         this.cleanTags = cleanTags;
-
-        this.transliterator = new Transliterator(newMappings);
+        this.transliterator = transliterator;
+        this.parserOptions = parserOptions;
+        this.parserPool = new ParserPool(addFixme, cleanTags, parserOptions);
     }
 
+    /**
+     * Convert and write the pages one after the other, e.g. to compare with the PagePipeline's
+     * files.
+     *
+     * @param pages the pages to write
+     * @return the number of written pages
+     * @throws IOException if a page's file can't be created
+     */
     int write(List<Page> pages) throws IOException {
         int converted = 0;
-        Parser parser = new Parser(addFixme, cleanTags);
+        Parser parser = new Parser(addFixme, cleanTags, parserOptions);
         for (Page page : pages) {
             Path outputPath = createOutputPath(page);
             Charset charset = StandardCharsets.UTF_8;
@@ -63,7 +104,124 @@ public class DokuWikiWriter {
         return converted;
     }
 
-    private Path createOutputPath(Page originalPage) throws IOException {
+    /**
+     * Convert the page. Pages can be converted concurrently.
+     *
+     * @param page the page to convert
+     * @return the converted page
+     */
+    String convert(Page page) {
+        StringWriter content = new StringWriter();
+        try {
+            convert(page, content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);  // a StringWriter doesn't throw
+        }
+        return content.toString();
+    }
+
+    /**
+     * Convert the page into the writer, e.g. a big page straight into its file. Pages can be
+     * converted concurrently.
+     *
+     * @param page the page to convert
+     * @param out the writer for the converted page
+     * @throws IOException if the page can't be written
+     */
+    void convert(Page page, Writer out) throws IOException {
+        Parser parser = parserPool.acquire();
+        try {
+            parser.convert(page, out);
+        } finally {
+            parserPool.release(parser);
+        }
+    }
+
+    /**
+     * Set how the converted pages are written by write(Path, String) and spool.
+     *
+     * @param pageFileWriter writes the pages' files
+     */
+    void setPageFileWriter(PageFileWriter pageFileWriter) {
+        this.pageFileWriter = pageFileWriter;
+    }
+
+    /**
+     * Create the page's file and write the converted page into it.
+     *
+     * @param outputPath the page's file, see getOutputPath
+     * @param content the converted page
+     * @throws IOException if the file exists or can't be written
+     */
+    @Override
+    public void write(Path outputPath, String content) throws IOException {
+        outputDirectories.create(outputPath.getParent());
+        pageFileWriter.write(outputPath, content, StandardOpenOption.CREATE_NEW);
+        pageFileWriter.written(outputPath);
+    }
+
+    /**
+     * Create a temporary file next to the page's file, so the page can be moved in place by
+     * write(Path, SpooledPage).
+     *
+     * @param outputPath the page's file, see getOutputPath
+     * @return the temporary file
+     * @throws IOException if the file can't be created
+     */
+    @Override
+    public SpooledPage spool(Path outputPath) throws IOException {
+        outputDirectories.create(outputPath.getParent());
+        while (true) {
+            Path tempFile = PageFileWriter.getTempFile(outputPath);
+            try {
+                return new SpooledPage(tempFile,
+                        pageFileWriter.newWriter(tempFile, StandardOpenOption.CREATE_NEW));
+            } catch (FileAlreadyExistsException e) {
+                // try another name
+            }
+        }
+    }
+
+    /**
+     * Rename the temporary file to the page's file.
+     *
+     * @param outputPath the page's file, see getOutputPath
+     * @param spooledPage the converted page
+     * @throws IOException if the page's file exists or the file can't be renamed
+     */
+    @Override
+    public void write(Path outputPath, SpooledPage spooledPage) throws IOException {
+        Files.move(spooledPage.getFile(), outputPath);
+        pageFileWriter.written(outputPath);
+    }
+
+    @Override
+    public void close() throws IOException {
+        pageFileWriter.syncWritten();
+    }
+
+    void printWritten(Page page) {
+        System.out.println("Written: " + page.getSuperPages() + " - " + page.getName());
+    }
+
+    /**
+     * Create the empty file for the page. Pages whose names map to the same file fail here.
+     *
+     * @param originalPage the page
+     * @return the path of the created file
+     * @throws IOException if the file exists or can't be created
+     */
+    Path createOutputPath(Page originalPage) throws IOException {
+        return createFile(getOutputPath(originalPage));
+    }
+
+    /**
+     * Get the page's file without accessing the file system.
+     *
+     * @param originalPage the page
+     * @return the path of the page's file
+     */
+    Path getOutputPath(Page originalPage) {
         StringBuilder outputPathBuilder = new StringBuilder();
 
         for (String superPageOriginal : originalPage.getSuperPages()) {
@@ -75,14 +233,23 @@ public class DokuWikiWriter {
         outputPathBuilder.append(pageName.toLowerCase());
         outputPathBuilder.append(SUFFIX);
 
-        Path pagePath = dokuWikiPath.resolve(outputPathBuilder.toString());
-        Files.createDirectories(pagePath.getParent());
+        return dokuWikiPath.resolve(outputPathBuilder.toString());
+    }
+
+    /**
+     * Create the empty file and its directories.
+     *
+     * @param pagePath the page's file, see getOutputPath
+     * @return the path of the created file
+     * @throws IOException if the file exists or can't be created
+     */
+    Path createFile(Path pagePath) throws IOException {
+        outputDirectories.create(pagePath.getParent());
         return Files.createFile(pagePath);
     }
 
     private void writePage(BufferedWriter writer, Page page, Parser parser) throws IOException {
-        String parsedContent = parser.parse(page);
-        writer.write(parsedContent);
-        System.out.println("Written: " + page.getSuperPages() + " - " + page.getName());
+        parser.convert(page, writer);
+        printWritten(page);
     }
 }
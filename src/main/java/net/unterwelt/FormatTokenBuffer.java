@@ -0,0 +1,55 @@
+package net.unterwelt;
+
+import java.util.*;
+
+/**
+ * Collects the format tokens that are written between two pieces of content, so tokens that
+ * cancel each other out can be dropped: a format that is opened and closed right away (e.g. a
+ * blank line within a bold paragraph) and a format that is closed and opened again right away
+ * (e.g. when the format an active format is nested in is closed and reopened). Neither changes
+ * what DokuWiki displays.
+ */
+class FormatTokenBuffer {
+
+    private final List<Object> formats = new ArrayList<>();
+    private final List<String> tokens = new ArrayList<>();
+    private final BitSet opens = new BitSet();
+
+    /**
+     * Add a token. The token cancels out the previous token if it belongs to the same format and
+     * one of them opens the format while the other closes it.
+     *
+     * @param format the rule the token belongs to
+     * @param isStartToken true if the token opens the format, false if it closes it
+     * @param token the output token; empty tokens are ignored
+     */
+    void add(Object format, boolean isStartToken, String token) {
+        if (token.isEmpty()) {
+            return;
+        }
+
+        int last = formats.size() - 1;
+        if (last >= 0 && formats.get(last) == format && opens.get(last) != isStartToken) {
+            formats.remove(last);
+            tokens.remove(last);
+            return;
+        }
+
+        opens.set(formats.size(), isStartToken);
+        formats.add(format);
+        tokens.add(token);
+    }
+
+    /**
+     * Append the remaining tokens to the output and clear the buffer.
+     *
+     * @param output the output to append the tokens to
+     */
+    void writeTo(StringBuilder output) {
+        for (String token : tokens) {
+            output.append(token);
+        }
+        formats.clear();
+        tokens.clear();
+    }
+}
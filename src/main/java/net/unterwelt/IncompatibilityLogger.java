@@ -7,6 +7,7 @@ import java.time.*;
 import java.util.*;
 import java.util.stream.*;
 import javax.json.*;
+import net.unterwelt.util.*;
 
 class IncompatibilityLogger {
 
@@ -99,16 +100,41 @@ class IncompatibilityLogger {
     }
 
     String check(List<Page> pages, String version, boolean writeFile) {
-        StringBuilder result = new StringBuilder().append(START_MESSAGE);
-        result.append(version).append("\n\n\n");
-
+        StringBuilder result = startReport(version);
         for (Page page : pages) {
-            boolean foundWarningsInPage = addPageNameWarnings(result, page);
-            foundWarningsInPage = addContentWarnings(result, page, foundWarningsInPage);
-            if (foundWarningsInPage) {
-                result.append("\n\n");
-            }
+            result.append(findWarnings(page));
+        }
+        return finishReport(result, writeFile);
+    }
+
+    /**
+     * Start a report the warnings of each page are added to as soon as the page was checked, so
+     * the pages don't need to be kept until all pages were checked.
+     *
+     * @param version the converter's version
+     * @return the report
+     */
+    StringBuilder startReport(String version) {
+        return new StringBuilder().append(START_MESSAGE).append(version).append("\n\n\n");
+    }
+
+    /**
+     * Get the warnings for a single page. Pages can be checked concurrently.
+     *
+     * @param page the page to check
+     * @return the warnings to add to the report, or an empty String
+     */
+    String findWarnings(Page page) {
+        StringBuilder result = new StringBuilder();
+        boolean foundWarningsInPage = addPageNameWarnings(result, page);
+        foundWarningsInPage = addContentWarnings(result, page, foundWarningsInPage);
+        if (foundWarningsInPage) {
+            result.append("\n\n");
         }
+        return result.toString();
+    }
+
+    String finishReport(StringBuilder result, boolean writeFile) {
         result.append(END_MESSAGE);
 
         if (writeFile) {
@@ -141,12 +167,13 @@ class IncompatibilityLogger {
     private boolean addContentWarnings(StringBuilder result, Page page,
                                        boolean hasPreviousWarnings) {
         for (Incompatibility incompatibility : contentIncompatibilities) {
-            for (String line : page.getContent()) {
+            for (CharSequence line : page.getLines()) {
                 boolean triggered = false;
-                int index = line.indexOf(incompatibility.getTrigger());
+                int index = CharSequences.indexOf(line, incompatibility.getTrigger(), 0);
                 while (index >= 0) {
-                    if (isInExceptions(line.substring(index), incompatibility)) {
-                        index = line.indexOf(incompatibility.getTrigger(), index + 1);
+                    if (isInExceptions(line, index, incompatibility)) {
+                        index = CharSequences.indexOf(line, incompatibility.getTrigger(),
+                                index + 1);
                     } else {
                         addPageHeading(result, hasPreviousWarnings, page);
                         result.append("  ").append(incompatibility.getTrigger()).append("\n");
@@ -164,9 +191,10 @@ class IncompatibilityLogger {
         return hasPreviousWarnings;
     }
 
-    private boolean isInExceptions(String substring, Incompatibility incompatibility) {
+    private boolean isInExceptions(CharSequence line, int offset,
+                                   Incompatibility incompatibility) {
         for (String exception : incompatibility.getExceptions()) {
-            if (substring.startsWith(exception)) {
+            if (CharSequences.startsWith(line, offset, exception)) {
                 return true;
             }
         }
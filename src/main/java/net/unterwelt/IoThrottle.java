@@ -0,0 +1,190 @@
+package net.unterwelt;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Limit the bandwidth and the file operations of the conversion, so it can run on a host that
+ * still serves the wikis without slowing them down. The limits are token buckets shared by all
+ * threads: reading and writing take tokens for their bytes and operations and wait if there are
+ * not enough. Each bucket holds up to one second of its rate, so short bursts aren't slowed
+ * down.
+ *
+ * <p>The read and written bytes are counted also without limits, for the progress output.
+ */
+class IoThrottle {
+
+    private final TokenBucket readBytes;
+    private final TokenBucket writeBytes;
+    private final TokenBucket operations;
+    private final AtomicLong readByteCount = new AtomicLong();
+    private final AtomicLong writtenByteCount = new AtomicLong();
+    private final AtomicLong operationCount = new AtomicLong();
+
+    /**
+     * @param readBytesPerSecond the read bandwidth; 0 for no limit
+     * @param writeBytesPerSecond the write bandwidth; 0 for no limit
+     * @param operationsPerSecond the file operations (reading or writing a file); 0 for no limit
+     */
+    IoThrottle(long readBytesPerSecond, long writeBytesPerSecond, long operationsPerSecond) {
+        this.readBytes = TokenBucket.of(readBytesPerSecond);
+        this.writeBytes = TokenBucket.of(writeBytesPerSecond);
+        this.operations = TokenBucket.of(operationsPerSecond);
+    }
+
+    /**
+     * @return a throttle without limits, which only counts
+     */
+    static IoThrottle unlimited() {
+        return new IoThrottle(0, 0, 0);
+    }
+
+    /**
+     * @return true if any limit is set
+     */
+    boolean isLimited() {
+        return readBytes != null || writeBytes != null || operations != null;
+    }
+
+    /**
+     * Take the tokens for reading, waiting until there are enough.
+     *
+     * @param fileOperations the number of file operations, e.g. 1 for reading a file
+     * @param bytes the number of bytes
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     */
+    void read(int fileOperations, long bytes) throws InterruptedIOException {
+        readByteCount.addAndGet(bytes);
+        take(readBytes, fileOperations, bytes);
+    }
+
+    /**
+     * Take the tokens for writing, waiting until there are enough.
+     *
+     * @param fileOperations the number of file operations, e.g. 1 for writing a file
+     * @param bytes the number of bytes
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     */
+    void write(int fileOperations, long bytes) throws InterruptedIOException {
+        writtenByteCount.addAndGet(bytes);
+        take(writeBytes, fileOperations, bytes);
+    }
+
+    private void take(TokenBucket bytesBucket, int fileOperations, long bytes)
+            throws InterruptedIOException {
+        operationCount.addAndGet(fileOperations);
+        long waitNanos = 0;
+        if (bytesBucket != null) {
+            waitNanos = bytesBucket.take(bytes);
+        }
+        if (operations != null && fileOperations > 0) {
+            waitNanos = Math.max(waitNanos, operations.take(fileOperations));
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling");
+            }
+        }
+    }
+
+    long getReadBytes() {
+        return readByteCount.get();
+    }
+
+    long getWrittenBytes() {
+        return writtenByteCount.get();
+    }
+
+    long getOperations() {
+        return operationCount.get();
+    }
+
+    /**
+     * Count the bytes read from the stream and wait as long as the bandwidth limit requires. The
+     * reads aren't file operations; the caller takes those, e.g. one per archive entry.
+     *
+     * @param in the stream, e.g. of an archive
+     * @return the throttled stream
+     */
+    InputStream throttle(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    IoThrottle.this.read(0, 1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read > 0) {
+                    IoThrottle.this.read(0, read);
+                }
+                return read;
+            }
+        };
+    }
+
+    /**
+     * Count the bytes written to the stream and wait as long as the bandwidth limit requires. The
+     * writes aren't file operations; the caller takes those, e.g. one per archive entry.
+     *
+     * @param out the stream, e.g. of an archive
+     * @return the throttled stream
+     */
+    OutputStream throttle(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                IoThrottle.this.write(0, 1);
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                IoThrottle.this.write(0, length);
+                out.write(buffer, offset, length);
+            }
+        };
+    }
+
+    /**
+     * Tokens refill at the rate up to one second's worth. Taking more tokens than there are
+     * leaves a debt, which the caller waits off, so requests bigger than the bucket are possible
+     * and later callers wait behind it.
+     */
+    private static class TokenBucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        private TokenBucket(long tokensPerSecond) {
+            this.tokensPerNano = tokensPerSecond / 1e9;
+            this.capacity = tokensPerSecond;
+            this.tokens = tokensPerSecond;
+        }
+
+        private static TokenBucket of(long tokensPerSecond) {
+            return tokensPerSecond > 0 ? new TokenBucket(tokensPerSecond) : null;
+        }
+
+        /**
+         * @return the nanoseconds to wait until the taken tokens are paid off
+         */
+        private synchronized long take(long amount) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            tokens -= amount;
+            return tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package net.unterwelt;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Run the largest waiting task first (longest processing time first). When the tasks' sizes are
+ * very different, starting the large tasks early keeps a large task from running alone at the
+ * end, while the small tasks fill the gaps: each idle thread takes the largest task that is left.
+ * Tasks of the same size run in the order they were submitted.
+ */
+class LargestFirstExecutor extends ThreadPoolExecutor {
+
+    private final AtomicLong submittedTasks = new AtomicLong();
+
+    /**
+     * @param name the name of the threads
+     * @param threads the number of threads
+     */
+    LargestFirstExecutor(String name, int threads) {
+        super(threads, threads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(),
+                WorkerThreads.daemonThreads(name));
+    }
+
+    /**
+     * Submit a task with its estimated size.
+     *
+     * @param task the task
+     * @param size the task's size, e.g. the size of the page to convert
+     * @return the task's result
+     */
+    <T> Future<T> submit(Callable<T> task, long size) {
+        SizedTask<T> sizedTask = new SizedTask<>(task, size, submittedTasks.getAndIncrement());
+        execute(sizedTask);
+        return sizedTask;
+    }
+
+    /**
+     * Tasks without a size run after all tasks with a size.
+     */
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new SizedTask<>(callable, 0, submittedTasks.getAndIncrement());
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return newTaskFor(Executors.callable(runnable, value));
+    }
+
+    private static class SizedTask<T> extends FutureTask<T> implements Comparable<SizedTask<?>> {
+        private final long size;
+        private final long sequenceNumber;
+
+        private SizedTask(Callable<T> callable, long size, long sequenceNumber) {
+            super(callable);
+            this.size = size;
+            this.sequenceNumber = sequenceNumber;
+        }
+
+        @Override
+        public int compareTo(SizedTask<?> other) {
+            if (size != other.size) {
+                return Long.compare(other.size, size);
+            }
+            return Long.compare(sequenceNumber, other.sequenceNumber);
+        }
+    }
+}
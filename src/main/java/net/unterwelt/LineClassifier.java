@@ -0,0 +1,122 @@
+package net.unterwelt;
+
+import java.util.*;
+import net.unterwelt.rules.*;
+
+/**
+ * Classify a line in a single pass before it is converted, so the line level rules don't have to
+ * probe the line one after another with trimmed copies and substrings.
+ *
+ * <p>The descriptor is reused for every line, so it's only valid until the next line is
+ * classified.
+ */
+class LineClassifier {
+
+    private final HeadingRule headingRule;
+    private final List<LineStartRule> listRules;
+    private final TableRule tableRule;
+
+    private final LineDescriptor descriptor = new LineDescriptor();
+
+    LineClassifier(HeadingRule headingRule, List<LineStartRule> listRules,
+                   TableRule tableRule) {
+        this.headingRule = headingRule;
+        this.listRules = listRules;
+        this.tableRule = tableRule;
+    }
+
+    LineDescriptor classify(String line) {
+        descriptor.isBlank = line.isEmpty();
+        descriptor.isTableRow = tableRule.isTableRow(line);
+        descriptor.headingSignifierCount = headingRule.getSignifierCount(line);
+        classifyListItem(line);
+
+        return descriptor;
+    }
+
+    private void classifyListItem(String line) {
+        descriptor.listRule = null;
+        if (!line.startsWith(" ")) {
+            return;
+        }
+
+        int contentStart = 0;
+        while (contentStart < line.length() && line.charAt(contentStart) <= ' ') {
+            contentStart++;
+        }
+        int contentEnd = line.length();
+        while (contentEnd > contentStart && line.charAt(contentEnd - 1) <= ' ') {
+            contentEnd--;
+        }
+
+        for (LineStartRule rule : listRules) {
+            int tokenLength = rule.getTokenLength(line, contentStart, contentEnd);
+            if (tokenLength > 0) {
+                descriptor.listRule = rule;
+                descriptor.indentation = contentStart;
+                descriptor.contentStart = contentStart + tokenLength;
+                descriptor.contentEnd = contentEnd;
+                return;
+            }
+        }
+    }
+
+    /**
+     * The line level syntax found in a line. A line may look like a heading and a list item at
+     * the same time; the Parser decides which one applies.
+     */
+    static class LineDescriptor {
+        private boolean isBlank;
+        private boolean isTableRow;
+        private int headingSignifierCount;
+        private LineStartRule listRule;
+        private int indentation;
+        private int contentStart;
+        private int contentEnd;
+
+        boolean isBlank() {
+            return isBlank;
+        }
+
+        boolean isTableRow() {
+            return isTableRow;
+        }
+
+        boolean isHeading() {
+            return headingSignifierCount != HeadingRule.NO_HEADING;
+        }
+
+        int getHeadingSignifierCount() {
+            return headingSignifierCount;
+        }
+
+        boolean isListItem() {
+            return listRule != null;
+        }
+
+        LineStartRule getListRule() {
+            return listRule;
+        }
+
+        /**
+         * @return the number of whitespace characters before the list token
+         */
+        int getIndentation() {
+            return indentation;
+        }
+
+        /**
+         * @return the start of the list item's content after the list token
+         */
+        int getContentStart() {
+            return contentStart;
+        }
+
+        /**
+         * @return the end of the list item's content without trailing whitespace
+         */
+        int getContentEnd() {
+            return contentEnd;
+        }
+    }
+}
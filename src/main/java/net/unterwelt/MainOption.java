@@ -11,6 +11,9 @@ public enum MainOption {
     CHARSET("-c", "--charset", "use specific charset for input\n\t\t"
             + "(see https://docs.oracle.com/en/java/javase/11/docs/api/java.base/java/nio/charset/Charset.html)",
             MainOption::handleCharSet),
+    REPLACE_MALFORMED("-e", "--replacemalformed", "replace bytes that are invalid in the input "
+            + "charset with a replacement character (default is to skip such pages)",
+            MainOption::handleReplaceMalformed),
     FIXME("-f", "--fixme", "add a fixme message at the start of each generated page",
             MainOption::handleFixMe),
     INCOMPATIBILITIES("-i", "--incompatibilities", "json file defining when to "
@@ -18,11 +21,41 @@ public enum MainOption {
     MAPPING_FILE("-m", "--mappingfile", "file with mappings for non-ASCII characters to use when "
             + "creating DokuWiki files.", MainOption::handleMappingFile),
     DOKUWIKI_DIR("-o", "--outputdir", "path to the DokuWiki pages directory (default is "
-            + "dokuwiki/data/pages; will be created if missing)", MainOption::handleDokuWikiDir),
+            + "dokuwiki/data/pages; will be created if missing) or a .tar, .tar.gz or .zip file to "
+            + "write the pages into", MainOption::handleDokuWikiDir),
+    UPDATE("-u", "--update", "write into an existing DokuWiki pages directory: unchanged pages "
+            + "are left alone, changed pages are replaced", MainOption::handleUpdate),
+    READ_RATE("-a", "--readrate", "read at most this many bytes per second, e.g. 20M (to convert "
+            + "on a host that still serves the wiki; shows the throughput)",
+            MainOption::handleReadRate),
+    WRITE_RATE("-k", "--writerate", "write at most this many bytes per second, e.g. 5M",
+            MainOption::handleWriteRate),
+    FILE_RATE("-z", "--filerate", "read and write at most this many files per second",
+            MainOption::handleFileRate),
+    SYNC("-y", "--sync", "when to force the written pages to the disk: 'none' (default), 'file' "
+            + "for each page or 'end' for all pages at the end", MainOption::handleSync),
     MOINMOIN_DIR("-p", "--inputdir", "path to the MoinMoin pages directory (default is "
-            + "MoinMoin/wiki/data/pages))", MainOption::handleMoinMoinDir),
+            + "MoinMoin/wiki/data/pages)) or to a .tar, .tar.gz or .zip archive of it",
+            MainOption::handleMoinMoinDir),
     TAG_CLEANER("-t", "--tagcleaner", "activate to automatically remove tags without content (e.g"
             + ". ****)", MainOption::handleTagCleaner),
+    VECTORIZED_SCAN("-s", "--vectorscan", "search regular text with the JDK's vectorized String "
+            + "search (faster for long lines; same result)", MainOption::handleVectorizedScan),
+    MINIMAL_MARKUP("-n", "--minimalmarkup", "drop format tags that cancel each other out, e.g. "
+            + "bold tags around empty lines", MainOption::handleMinimalMarkup),
+    PARALLEL_PAGES("-b", "--splitbigpages", "parse big pages in chunks on all processors (same "
+            + "result)", MainOption::handleParallelPages),
+    THREADS("-j", "--threads", "number of threads checking and converting pages (default is 1);"
+            + " 'auto' adjusts the numbers of threads while converting",
+            MainOption::handleThreads),
+    IO_THREADS("-r", "--iothreads", "number of threads reading and writing files (default is "
+            + PagePipeline.DEFAULT_IO_THREADS + ")", MainOption::handleIoThreads),
+    VIRTUAL_THREADS("-w", "--virtualthreads", "read and write up to this many pages at the same "
+            + "time on virtual threads (for storage with high latency, e.g. NFS; needs Java 21)",
+            MainOption::handleVirtualThreads),
+    QUEUE_SIZE("-q", "--queuesize", "number of pages waiting between two conversion steps "
+            + "(default is " + PagePipeline.DEFAULT_QUEUE_SIZE + "; limits the memory usage)",
+            MainOption::handleQueueSize),
 
     HELP("-h", "--help", "show this help message",
             MainOption::handleHelp),
@@ -63,13 +96,42 @@ public enum MainOption {
 
         return 1;
     }
+    private static int handleReplaceMalformed(PropertiesAndArgs propertiesAndArgs) {
+        Properties properties = propertiesAndArgs.getProperties();
+        properties.setProperty(REPLACE_MALFORMED_PROPERTY, "true");
+
+        return 0;
+    }
+
     private static int handleDokuWikiDir(PropertiesAndArgs propertiesAndArgs) {
         Properties properties = propertiesAndArgs.getProperties();
-        String dokuWikiPath = propertiesAndArgs.getArgs()[1];
+        String dokuWikiPath = propertiesAndArgs.getArgs()[0];
         properties.setProperty(DOKUWIKI_DIR_PROPERTY, dokuWikiPath);
 
         return 1;
     }
+
+    private static int handleUpdate(PropertiesAndArgs propertiesAndArgs) {
+        Properties properties = propertiesAndArgs.getProperties();
+        properties.setProperty(UPDATE_PROPERTY, "true");
+
+        return 0;
+    }
+
+    private static int handleSync(PropertiesAndArgs propertiesAndArgs) {
+        Properties properties = propertiesAndArgs.getProperties();
+        String[] args = propertiesAndArgs.getArgs();
+        String sync = args.length > 0 ? args[0] : "";
+        try {
+            properties.setProperty(SYNC_PROPERTY,
+                    PageFileWriter.Sync.valueOf(sync.toUpperCase(Locale.ROOT)).name());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid sync: " + sync);
+        }
+
+        return 1;
+    }
+
     static int handleFixMe(PropertiesAndArgs propertiesAndArgs) {
         Properties properties = propertiesAndArgs.getProperties();
         properties.setProperty(FIXME_PROPERTY, "true");
@@ -95,7 +157,7 @@ public enum MainOption {
 
     private static int handleMoinMoinDir(PropertiesAndArgs propertiesAndArgs) {
         Properties properties = propertiesAndArgs.getProperties();
-        String moinMoinPath = propertiesAndArgs.getArgs()[1];
+        String moinMoinPath = propertiesAndArgs.getArgs()[0];
         properties.setProperty(MOINMOIN_DIR_PROPERTY, moinMoinPath);
 
         return 1;
@@ -108,6 +170,119 @@ public enum MainOption {
         return 0;
     }
 
+    private static int handleVectorizedScan(PropertiesAndArgs propertiesAndArgs) {
+        Properties properties = propertiesAndArgs.getProperties();
+        properties.setProperty(VECTORIZED_SCAN_PROPERTY, "true");
+
+        return 0;
+    }
+
+    private static int handleMinimalMarkup(PropertiesAndArgs propertiesAndArgs) {
+        Properties properties = propertiesAndArgs.getProperties();
+        properties.setProperty(MINIMAL_MARKUP_PROPERTY, "true");
+
+        return 0;
+    }
+
+    private static int handleParallelPages(PropertiesAndArgs propertiesAndArgs) {
+        Properties properties = propertiesAndArgs.getProperties();
+        properties.setProperty(PARALLEL_PAGES_PROPERTY, "true");
+
+        return 0;
+    }
+
+    private static int handleThreads(PropertiesAndArgs propertiesAndArgs) {
+        Properties properties = propertiesAndArgs.getProperties();
+        String[] args = propertiesAndArgs.getArgs();
+        if (args.length > 0 && AUTO_THREADS.equals(args[0])) {
+            properties.setProperty(THREADS_PROPERTY, AUTO_THREADS);
+        } else {
+            properties.setProperty(THREADS_PROPERTY,
+                    getCount(propertiesAndArgs, "number of threads"));
+        }
+
+        return 1;
+    }
+
+    private static int handleIoThreads(PropertiesAndArgs propertiesAndArgs) {
+        Properties properties = propertiesAndArgs.getProperties();
+        properties.setProperty(IO_THREADS_PROPERTY,
+                getCount(propertiesAndArgs, "number of I/O threads"));
+
+        return 1;
+    }
+
+    private static int handleVirtualThreads(PropertiesAndArgs propertiesAndArgs) {
+        Properties properties = propertiesAndArgs.getProperties();
+        properties.setProperty(VIRTUAL_THREADS_PROPERTY,
+                getCount(propertiesAndArgs, "number of virtual threads"));
+
+        return 1;
+    }
+
+    private static int handleQueueSize(PropertiesAndArgs propertiesAndArgs) {
+        Properties properties = propertiesAndArgs.getProperties();
+        properties.setProperty(QUEUE_SIZE_PROPERTY, getCount(propertiesAndArgs, "queue size"));
+
+        return 1;
+    }
+
+    private static int handleReadRate(PropertiesAndArgs propertiesAndArgs) {
+        Properties properties = propertiesAndArgs.getProperties();
+        properties.setProperty(READ_RATE_PROPERTY, getRate(propertiesAndArgs, "read rate"));
+
+        return 1;
+    }
+
+    private static int handleWriteRate(PropertiesAndArgs propertiesAndArgs) {
+        Properties properties = propertiesAndArgs.getProperties();
+        properties.setProperty(WRITE_RATE_PROPERTY, getRate(propertiesAndArgs, "write rate"));
+
+        return 1;
+    }
+
+    private static int handleFileRate(PropertiesAndArgs propertiesAndArgs) {
+        Properties properties = propertiesAndArgs.getProperties();
+        properties.setProperty(FILE_RATE_PROPERTY, getRate(propertiesAndArgs, "file rate"));
+
+        return 1;
+    }
+
+    /**
+     * Get a rate like "500", "64K", "20M" or "1G" as a number.
+     */
+    private static String getRate(PropertiesAndArgs propertiesAndArgs, String name) {
+        String[] args = propertiesAndArgs.getArgs();
+        String rate = args.length > 0 ? args[0] : "";
+        if (!rate.matches("[1-9][0-9]{0,8}[KkMmGg]?")) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + rate);
+        }
+        long factor;
+        switch (Character.toUpperCase(rate.charAt(rate.length() - 1))) {
+            case 'K':
+                factor = 1L << 10;
+                break;
+            case 'M':
+                factor = 1L << 20;
+                break;
+            case 'G':
+                factor = 1L << 30;
+                break;
+            default:
+                return rate;
+        }
+        return String.valueOf(Long.parseLong(rate.substring(0, rate.length() - 1)) * factor);
+    }
+
+    private static String getCount(PropertiesAndArgs propertiesAndArgs, String name) {
+        String[] args = propertiesAndArgs.getArgs();
+        String count = args.length > 0 ? args[0] : "";
+        if (!count.matches("[1-9][0-9]{0,3}")) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + count);
+        }
+        return count;
+    }
+
     static int handleHelp(PropertiesAndArgs propertiesAndArgs) {
         String messageHeader = "Usage: moinmoin2dokuwiki [OPTION [PARAMETER]]\n"
                 + "Convert MoinMoin wiki pages to DokuWiki pages\n"
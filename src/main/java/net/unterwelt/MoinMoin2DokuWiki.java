@@ -17,13 +17,30 @@ public class MoinMoin2DokuWiki {
     private static final Path DEFAULT_MOINMOIN_DIR = Paths.get("MoinMoin", "wiki", "data", "pages");
 
     static final String CHARSET_PROPERTY = MainOption.CHARSET.name();
-    static final String DOKUWIKI_DIR_PROPERTY = MainOption.MOINMOIN_DIR.name();
+    static final String REPLACE_MALFORMED_PROPERTY = MainOption.REPLACE_MALFORMED.name();
+    static final String DOKUWIKI_DIR_PROPERTY = MainOption.DOKUWIKI_DIR.name();
     static final String FIXME_PROPERTY = MainOption.FIXME.name();
     static final String INCOMPATIBILITIES_PROPERTY = MainOption.INCOMPATIBILITIES.name();
     static final String MAPPING_FILE_PROPERTY = MainOption.MAPPING_FILE.name();
     static final String MOINMOIN_DIR_PROPERTY = MainOption.MOINMOIN_DIR.name();
     static final String TAG_CLEANER_PROPERTY = MainOption.TAG_CLEANER.name();
+    static final String VECTORIZED_SCAN_PROPERTY = MainOption.VECTORIZED_SCAN.name();
+    static final String MINIMAL_MARKUP_PROPERTY = MainOption.MINIMAL_MARKUP.name();
+    static final String PARALLEL_PAGES_PROPERTY = MainOption.PARALLEL_PAGES.name();
+    static final String THREADS_PROPERTY = MainOption.THREADS.name();
+    static final String IO_THREADS_PROPERTY = MainOption.IO_THREADS.name();
+    static final String VIRTUAL_THREADS_PROPERTY = MainOption.VIRTUAL_THREADS.name();
+    static final String QUEUE_SIZE_PROPERTY = MainOption.QUEUE_SIZE.name();
+    static final String UPDATE_PROPERTY = MainOption.UPDATE.name();
+    static final String SYNC_PROPERTY = MainOption.SYNC.name();
+    static final String READ_RATE_PROPERTY = MainOption.READ_RATE.name();
+    static final String WRITE_RATE_PROPERTY = MainOption.WRITE_RATE.name();
+    static final String FILE_RATE_PROPERTY = MainOption.FILE_RATE.name();
     static final String RUN_PROPERTY = "RUN";
+    static final String AUTO_THREADS = "auto";
+
+    private static final long AUTO_TUNING_INTERVAL_MILLIS = 1000;
+    private static final long PROGRESS_INTERVAL_MILLIS = 10_000;
 
     private HashMap<String, MainOption> flags;
 
@@ -83,22 +100,65 @@ public class MoinMoin2DokuWiki {
         MainOption.HELP.handle(null);
     }
 
+    /**
+     * Read, check, parse and write the pages at the same time, so the wiki doesn't need to fit
+     * into memory.
+     */
     private void convertPages() {
         System.out.println("== Starting conversion ==");
-        List<Page> pages = readPages();
-        checkIncompatibilities(pages);
-        int converted = writePages(pages);
+        Path moinMoinPath = getMoinMoinPath();
+        IoThrottle ioThrottle = getIoThrottle();
+        PageSource pageSource = createPageSource(moinMoinPath, ioThrottle);
+
+        int converted = 0;
+        Map<String, Integer> finalSettings = Collections.emptyMap();
+        try {
+            DokuWikiWriter dokuWikiWriter = getDokuWikiWriter();
+            dokuWikiWriter.setPageFileWriter(createPageFileWriter(ioThrottle));
+            try (PageSink pageSink = createPageSink(dokuWikiWriter, ioThrottle)) {
+                PagePipeline pipeline = new PagePipeline(pageSource, getIncompatibilityLogger(),
+                        dokuWikiWriter, getThreads(), getIoThreads(), getVirtualThreads(),
+                        getQueueSize());
+                pipeline.writeTo(pageSink);
+                if (isAutoThreads()) {
+                    pipeline.enableAutoTuning(AUTO_TUNING_INTERVAL_MILLIS);
+                }
+                if (ioThrottle.isLimited()) {
+                    pipeline.enableProgress(ioThrottle, PROGRESS_INTERVAL_MILLIS);
+                }
+                converted = pipeline.run(VERSION_NUMBER, true);
+                if (pipeline.getReadPages() == 0) {
+                    System.out.println("No pages found in " + moinMoinPath);
+                }
+                finalSettings = pipeline.getFinalSettings();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
         System.out.println("== Converted " + converted + " pages ==");
+        if (!finalSettings.isEmpty()) {
+            showFinalSettings(finalSettings);
+        }
     }
 
-    private List<Page> readPages() {
-        Path moinMoinPath = getMoinMoinPath();
-        Charset inputCharset = getInputCharset();
-        List<Page> pages = new MoinMoinPagesCrawler(moinMoinPath, inputCharset).crawl();
-        if (pages.size() == 0) {
-            System.out.println("No pages found in " + moinMoinPath);
+    /**
+     * Show the numbers of threads found by --threads auto, so they can be used for the next run.
+     */
+    private void showFinalSettings(Map<String, Integer> finalSettings) {
+        StringBuilder threads = new StringBuilder();
+        for (Map.Entry<String, Integer> setting : finalSettings.entrySet()) {
+            if (threads.length() > 0) {
+                threads.append(", ");
+            }
+            threads.append(setting.getKey()).append(" ").append(setting.getValue());
         }
-        return pages;
+        int ioThreads = Math.max(finalSettings.getOrDefault("read", 1),
+                finalSettings.getOrDefault("write", 1));
+        MainOption ioOption = getVirtualThreads() > 0 && WorkerThreads.areVirtualThreadsAvailable()
+                ? MainOption.VIRTUAL_THREADS : MainOption.IO_THREADS;
+        System.out.println("== Threads at the end: " + threads + " (next time use "
+                + MainOption.THREADS.getLongFlag() + " " + finalSettings.getOrDefault("parse", 1)
+                + " " + ioOption.getLongFlag() + " " + ioThreads + ") ==");
     }
 
     private Path getMoinMoinPath() {
@@ -106,41 +166,138 @@ public class MoinMoin2DokuWiki {
         return pathName != null ? Paths.get(pathName) : DEFAULT_MOINMOIN_DIR;
     }
 
+    /**
+     * Read the pages from the MoinMoin pages directory or, if an archive of it is given, straight
+     * from the archive.
+     */
+    private PageSource createPageSource(Path moinMoinPath, IoThrottle ioThrottle) {
+        if (Files.isRegularFile(moinMoinPath)
+                && ArchiveReader.isArchive(moinMoinPath.getFileName().toString())) {
+            return new ArchivePageSource(moinMoinPath, getInputCharset(),
+                    getMalformedInputAction(), ioThrottle);
+        }
+        return new MoinMoinPagesCrawler(moinMoinPath, getInputCharset(),
+                getMalformedInputAction(), ioThrottle);
+    }
+
+    /**
+     * Limit reading and writing with --readrate, --writerate and --filerate.
+     */
+    private IoThrottle getIoThrottle() {
+        return new IoThrottle(Long.parseLong(properties.getProperty(READ_RATE_PROPERTY, "0")),
+                Long.parseLong(properties.getProperty(WRITE_RATE_PROPERTY, "0")),
+                Long.parseLong(properties.getProperty(FILE_RATE_PROPERTY, "0")));
+    }
+
     private Charset getInputCharset() {
         String charsetName = properties.getProperty(CHARSET_PROPERTY, null);
         return charsetName == null ? Charset.defaultCharset() : Charset.forName(charsetName);
     }
 
-    private void checkIncompatibilities(List<Page> pages) {
+    private CodingErrorAction getMalformedInputAction() {
+        return Boolean.parseBoolean(properties.getProperty(REPLACE_MALFORMED_PROPERTY, "false"))
+                ? CodingErrorAction.REPLACE : CodingErrorAction.REPORT;
+    }
+
+    private IncompatibilityLogger getIncompatibilityLogger() {
         String givenFileName = properties.getProperty(INCOMPATIBILITIES_PROPERTY);
-        new IncompatibilityLogger(IncompatibilityLogger.readIncompatibilities(givenFileName)).check(pages, VERSION_NUMBER);
+        return new IncompatibilityLogger(IncompatibilityLogger.readIncompatibilities(givenFileName));
     }
 
-    private int writePages(List<Page> pages) {
-        int written = 0;
-        try {
-            DokuWikiWriter dokuWikiWriter = getDokuWikiWriter();
-            written = dokuWikiWriter.write(pages);
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Write into a single archive if the output path is a .tar, .tar.gz or .zip file, else into
+     * the pages directory, replacing the existing pages with --update.
+     */
+    private PageSink createPageSink(DokuWikiWriter dokuWikiWriter, IoThrottle ioThrottle)
+            throws IOException {
+        Path dokuWikiPath = getDokuWikiPath();
+        if (!ArchiveReader.isArchive(dokuWikiPath.getFileName().toString())) {
+            return isUpdate() ? new UpdatingPageSink(createPageFileWriter(ioThrottle), ioThrottle)
+                    : dokuWikiWriter;
+        }
+        Path archiveDir = dokuWikiPath.toAbsolutePath().getParent();
+        if (archiveDir != null) {
+            Files.createDirectories(archiveDir);
         }
-        return written;
+        return new ArchivePageSink(dokuWikiPath, dokuWikiPath, ioThrottle);
     }
 
-    private DokuWikiWriter getDokuWikiWriter() throws IOException {
+    /**
+     * Keep a buffer for each page the write stage writes at the same time.
+     */
+    private PageFileWriter createPageFileWriter(IoThrottle ioThrottle) {
+        int writeThreads = getVirtualThreads() > 0 && WorkerThreads.areVirtualThreadsAvailable()
+                ? getVirtualThreads() : getIoThreads();
+        return new PageFileWriter(getSync(), ioThrottle, writeThreads);
+    }
+
+    private PageFileWriter.Sync getSync() {
+        return PageFileWriter.Sync.valueOf(properties.getProperty(SYNC_PROPERTY,
+                PageFileWriter.Sync.NONE.name()));
+    }
+
+    private boolean isUpdate() {
+        return Boolean.parseBoolean(properties.getProperty(UPDATE_PROPERTY, "false"));
+    }
+
+    private Path getDokuWikiPath() {
         String dokuwikiDir = properties.getProperty(DOKUWIKI_DIR_PROPERTY);
-        Path dokuWikiPath = dokuwikiDir != null ? Paths.get(dokuwikiDir) :
-                DEFAULT_DOKUWIKI_PAGES_DIR;
+        return dokuwikiDir != null ? Paths.get(dokuwikiDir) : DEFAULT_DOKUWIKI_PAGES_DIR;
+    }
+
+    private DokuWikiWriter getDokuWikiWriter() throws IOException {
+        Path dokuWikiPath = getDokuWikiPath();
         boolean addFixMe = Boolean.parseBoolean(properties.getProperty(FIXME_PROPERTY, "false"));
         boolean cleanTags = Boolean.parseBoolean(
                 properties.getProperty(TAG_CLEANER_PROPERTY, "false"));
         String mappingFile = properties.getProperty(MAPPING_FILE_PROPERTY, null);
+        Set<ParserOption> parserOptions = getParserOptions();
 
         if (mappingFile != null) {
-            return new DokuWikiWriter(dokuWikiPath, addFixMe, cleanTags, Paths.get(mappingFile));
+            return new DokuWikiWriter(dokuWikiPath, addFixMe, cleanTags, Paths.get(mappingFile),
+                    parserOptions);
         }
 
-        return new DokuWikiWriter(dokuWikiPath, addFixMe, cleanTags);
+        return new DokuWikiWriter(dokuWikiPath, addFixMe, cleanTags, parserOptions);
+    }
+
+    private int getThreads() {
+        if (isAutoThreads()) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return Integer.parseInt(properties.getProperty(THREADS_PROPERTY, "1"));
+    }
+
+    private boolean isAutoThreads() {
+        return AUTO_THREADS.equals(properties.getProperty(THREADS_PROPERTY));
+    }
+
+    private int getIoThreads() {
+        return Integer.parseInt(properties.getProperty(IO_THREADS_PROPERTY,
+                String.valueOf(PagePipeline.DEFAULT_IO_THREADS)));
+    }
+
+    private int getVirtualThreads() {
+        return Integer.parseInt(properties.getProperty(VIRTUAL_THREADS_PROPERTY, "0"));
+    }
+
+    private int getQueueSize() {
+        return Integer.parseInt(properties.getProperty(QUEUE_SIZE_PROPERTY,
+                String.valueOf(PagePipeline.DEFAULT_QUEUE_SIZE)));
+    }
+
+    private Set<ParserOption> getParserOptions() {
+        Set<ParserOption> parserOptions = EnumSet.noneOf(ParserOption.class);
+        if (Boolean.parseBoolean(properties.getProperty(VECTORIZED_SCAN_PROPERTY, "false"))) {
+            parserOptions.add(ParserOption.VECTORIZED_SCAN);
+        }
+        if (Boolean.parseBoolean(properties.getProperty(MINIMAL_MARKUP_PROPERTY, "false"))) {
+            parserOptions.add(ParserOption.MINIMAL_MARKUP);
+        }
+        if (Boolean.parseBoolean(properties.getProperty(PARALLEL_PAGES_PROPERTY, "false"))) {
+            parserOptions.add(ParserOption.PARALLEL_PAGES);
+        }
+        return parserOptions;
     }
 
 
@@ -1,10 +1,13 @@
 package net.unterwelt;
 
 import java.io.*;
-import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
 import java.nio.charset.*;
 import java.nio.file.*;
+import java.nio.file.attribute.*;
 import java.util.*;
+import java.util.function.*;
 import java.util.stream.*;
 
 /**
@@ -13,21 +16,54 @@ import java.util.stream.*;
  * <p>The page names will be converted to UTF-8. The page contents however are stored "as is", i.e.
  * the content will not be parsed. Line breaks will be preserved.
  */
-public class MoinMoinPagesCrawler {
+public class MoinMoinPagesCrawler implements PageSource {
 
-    private Charset inputCharset;
+    private static final int MAX_CURRENT_SIZE = 64;  // revision numbers have 8 digits
 
     private final Path moinMoinDir;
+    private final PageNameDecoder pageNameDecoder;
+    private final RevisionReader revisionReader;
+    private final IoThrottle ioThrottle;
 
     /**
-     * Create a MoinMoinPagesCrawler.
+     * Create a MoinMoinPagesCrawler that skips pages with content that is not valid in the
+     * charset.
      *
      * @param moinMoinDir the MoinMoin pages directory
      * @param inputCharset the charset for the file contents
      */
     MoinMoinPagesCrawler(Path moinMoinDir, Charset inputCharset) {
+        this(moinMoinDir, inputCharset, CodingErrorAction.REPORT);
+    }
+
+    /**
+     * Create a MoinMoinPagesCrawler.
+     *
+     * @param moinMoinDir the MoinMoin pages directory
+     * @param inputCharset the charset for the file contents
+     * @param malformedInputAction REPORT to skip pages with content that is not valid in the
+     * charset, REPLACE to replace the invalid bytes
+     */
+    MoinMoinPagesCrawler(Path moinMoinDir, Charset inputCharset,
+                         CodingErrorAction malformedInputAction) {
+        this(moinMoinDir, inputCharset, malformedInputAction, IoThrottle.unlimited());
+    }
+
+    /**
+     * Create a MoinMoinPagesCrawler that reads no faster than the throttle allows.
+     *
+     * @param moinMoinDir the MoinMoin pages directory
+     * @param inputCharset the charset for the file contents
+     * @param malformedInputAction REPORT to skip pages with content that is not valid in the
+     * charset, REPLACE to replace the invalid bytes
+     * @param ioThrottle limits the reading of the files 'current' and the revisions
+     */
+    MoinMoinPagesCrawler(Path moinMoinDir, Charset inputCharset,
+                         CodingErrorAction malformedInputAction, IoThrottle ioThrottle) {
         this.moinMoinDir = moinMoinDir;
-        this.inputCharset = inputCharset;
+        this.pageNameDecoder = new PageNameDecoder(inputCharset);
+        this.revisionReader = new RevisionReader(inputCharset, malformedInputAction);
+        this.ioThrottle = ioThrottle;
     }
 
     /**
@@ -36,137 +72,203 @@ public class MoinMoinPagesCrawler {
      * @return the list of Pages
      */
     List<Page> crawl() {
-        File moinMoinFile = moinMoinDir.toFile();
-        if (!moinMoinFile.exists()) {
-            System.out.println("Error: Could not find " + moinMoinFile.getAbsolutePath());
+        List<Page> pages = new ArrayList<>();
+        for (File pageDir : findPageDirs()) {
+            Page page = readPage(pageDir, System.out::println);
+            if (page != null) {
+                pages.add(page);
+            }
         }
+        return pages;
+    }
 
-        List<File> subDirs = getSubDirs(moinMoinFile);
-        return createPagesFromSubDirs(subDirs);
+    /**
+     * Pass the directories of the MoinMoin pages sorted by name. The pages are read by the
+     * entries.
+     */
+    @Override
+    public void findPages(EntryConsumer consumer) throws InterruptedException {
+        for (File pageDir : findPageDirs()) {
+            consumer.accept(new PageDirEntry(pageDir));
+        }
     }
 
-    private List<File> getSubDirs(File currentDir) {
-        File[] subDirs = currentDir.listFiles();
-        if (subDirs == null) {
-            return Collections.emptyList();
+    /**
+     * Find the directories of the MoinMoin pages. The entries' types are read while listing the
+     * directory, so the page directories don't have to be checked one by one. Symbolic links are
+     * followed, so a linked page directory is found as before. Other entries are skipped.
+     *
+     * @return the directories sorted by name
+     */
+    List<File> findPageDirs() {
+        PageDirCollector collector = new PageDirCollector();
+        try {
+            Files.walkFileTree(moinMoinDir, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1,
+                    collector);
+        } catch (IOException e) {
+            System.out.println(e.toString());
         }
 
-        List<File> subDirsSorted = Arrays.asList(subDirs);
-        subDirsSorted.sort(Comparator.comparing(Object::toString));
-        return subDirsSorted;
+        List<Path> pageDirs = collector.pageDirs;
+        pageDirs.sort(Comparator.comparing(Object::toString));
+        return pageDirs.stream().map(Path::toFile).collect(Collectors.toList());
     }
 
-    private List<Page> createPagesFromSubDirs(List<File> subDirs) {
-        List<Page> pages = new ArrayList<>();
+    /**
+     * Create a Page for the MoinMoin page in the directory and read its content. Problems with a
+     * page are reported as messages, so they don't stop the crawl.
+     *
+     * @param subDir the page's directory
+     * @param messages receives the messages about the page, e.g. why it was skipped
+     * @return the Page or null if the page was skipped
+     */
+    Page readPage(File subDir, Consumer<String> messages) {
+        Page page = createPage(subDir, messages);
+        if (page == null) {
+            return null;
+        }
 
-        for (File subDir : subDirs) {
-            if (!subDir.isDirectory()) {
-                System.out.println(
-                        String.format("Skipped (not a directory): %s", subDir.getName()));
-                continue;
-            }
+        try {
+            page.getPageContent();
+        } catch (UncheckedIOException e) {
+            messages.accept(e.getCause().toString());
+            messages.accept(String.format("Skipped (no content): %s", subDir.getName()));
+            return null;
+        }
 
-            List<String> pageContentWithLineBreaks = getPageContent(subDir);
-            if (pageContentWithLineBreaks.size() == 0) {
-                System.out.println(String.format("Skipped (no content): %s", subDir.getName()));
-                continue;
-            }
-            List<String> pathElements = getElementsFromPath(subDir);
+        printCreated(page, messages);
+        return page;
+    }
 
-            pages.add(createPageFromPathElements(pathElements, pageContentWithLineBreaks));
+    private Page createPage(File subDir, Consumer<String> messages) {
+        Revision currentRevision = getCurrentRevision(subDir, messages);
+        if (currentRevision == null || currentRevision.size == 0) {
+            messages.accept(String.format("Skipped (no content): %s", subDir.getName()));
+            return null;
         }
 
-        return pages;
+        List<String> pathElements;
+        try {
+            pathElements = pageNameDecoder.decode(subDir.getName());
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            messages.accept(String.format("Skipped (invalid name): %s (%s)", subDir.getName(),
+                    e.getMessage()));
+            return null;
+        }
+
+        String pageName = pathElements.get(pathElements.size() - 1);
+        List<String> superPages = pathElements.subList(0, pathElements.size() - 1);
+        return new Page(superPages, pageName, currentRevision.size, () -> {
+            ioThrottle.read(1, currentRevision.size);
+            return revisionReader.read(currentRevision.path);
+        });
     }
 
-    private List<String> getPageContent(File subDir) {
+    /**
+     * Find the current revision's file and its size. Reading 'current' and the revision's
+     * attributes is all that is done per page until the content is read.
+     *
+     * @return the revision or null if it doesn't exist
+     */
+    private Revision getCurrentRevision(File subDir, Consumer<String> messages) {
+        Path pageDir = subDir.toPath();
         try {
-            Path currentRevision = getPathToCurrentRevision(subDir);
-            if (currentRevision == null || !currentRevision.toFile().exists()) {
-                System.out.println(subDir.toString() + " NOT FOUND (page might be deleted)");
-                return Collections.emptyList();
+            String revisionNumber = readRevisionNumber(pageDir.resolve("current"));
+            if (revisionNumber.isEmpty()) {
+                messages.accept("File 'current' in " + subDir + " has no content.");
+                return null;
             }
 
-            return Files.readAllLines(currentRevision, inputCharset)
-                    .stream().map(s -> s + "\n").collect(Collectors.toList());  // add line break
+            Path path = pageDir.resolve("revisions").resolve(revisionNumber);
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new Revision(path, attributes.size());
+        } catch (NoSuchFileException e) {
+            messages.accept(subDir.toString() + " NOT FOUND (page might be deleted)");
         } catch (IOException e) {
-            e.printStackTrace();
-        } catch (IndexOutOfBoundsException e) {
-            System.out.println("File 'current' in " + subDir + " has no content.");
+            messages.accept(e.toString());
         }
 
-        return Collections.emptyList();
+        return null;
     }
 
-    private Path getPathToCurrentRevision(File subDir) throws IOException {
-        try {
-            String revisionNumber = Files.readAllLines(subDir.toPath().resolve("current")).get(0);
-            return Paths.get(subDir.getAbsolutePath(), "revisions", revisionNumber);
-        } catch (NoSuchFileException e) {
-            System.out.println(subDir.toString() + " NOT FOUND (page might be deleted)");
-            return null;
+    /**
+     * Read the first line of the file 'current', which is the current revision's number, into a
+     * small buffer. Usually a single read fills it or reaches the end of the file.
+     */
+    private String readRevisionNumber(Path current) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_CURRENT_SIZE);
+        try (FileChannel channel = FileChannel.open(current, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read until the buffer is full or the file ended
+            }
         }
+        ioThrottle.read(1, buffer.position());
+
+        int end = 0;
+        while (end < buffer.position() && buffer.get(end) != '\n' && buffer.get(end) != '\r') {
+            end++;
+        }
+        return new String(buffer.array(), 0, end, StandardCharsets.ISO_8859_1);
     }
 
-    private List<String> getElementsFromPath(File subDir) {
-        String decodedLongName = decodeParentheses(subDir.getName());
-        String[] elements = decodedLongName.split("/");
-        return Arrays.asList(elements);
+    private static void printCreated(Page page, Consumer<String> messages) {
+        messages.accept(String.format("Created: %s - %s", page.getSuperPages(), page.getName()));
     }
 
     /**
-     * Decode the elements characters between parentheses.
-     *
-     * <p>MoinMoin unfortunately puts adjoining UTF-8 encodings within the same parentheses so
-     * simple replacing and decoding won't work.
-     *
-     * @param element the element in MoinMoin's format
-     * @return the element's content as a regular string
+     * Collect the directories in the MoinMoin pages directory. The file tree walk passes each
+     * entry's attributes, which are read while listing the directory where the OS allows it.
      */
-    private String decodeParentheses(String element) {
-        StringBuilder decodedName = new StringBuilder();
-
-        for (int i = 0; i < element.length(); i++) {
-            int parenthesisStart = element.indexOf('(', i);
-            if (parenthesisStart < 0) {
-                decodedName.append(element.substring(i));
-                break;  // no more ( in element
+    private class PageDirCollector extends SimpleFileVisitor<Path> {
+        private final List<Path> pageDirs = new ArrayList<>();
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+            if (attributes.isDirectory()) {
+                pageDirs.add(file);
+            } else {
+                System.out.println(String.format("Skipped (not a directory): %s",
+                        file.getFileName()));
             }
+            return FileVisitResult.CONTINUE;
+        }
 
-            int parenthesisEnd = element.indexOf(')', parenthesisStart);
-            if (parenthesisEnd < 0) {
-                throw new IllegalArgumentException("Opening parenthesis without closing " +
-                        "parenthesis found in '" + element + "'");
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+            if (file.equals(moinMoinDir)) {
+                System.out.println("Error: Could not find " + moinMoinDir.toAbsolutePath());
+            } else {
+                System.out.println(e.toString());
             }
+            return FileVisitResult.CONTINUE;
+        }
+    }
 
-            String beforeParenthesis = element.substring(i, parenthesisStart);
-            decodedName.append(beforeParenthesis);
-            String inParentheses = element.substring(parenthesisStart + 1, parenthesisEnd);
-            decodedName.append(decode(inParentheses));
+    private class PageDirEntry implements Entry {
+        private final File pageDir;
 
-            i = parenthesisEnd;
+        private PageDirEntry(File pageDir) {
+            this.pageDir = pageDir;
         }
-        return decodedName.toString();
-    }
 
-    private String decode(String element) {
-        StringBuilder urlEncoded = new StringBuilder();
-        for (int i = 0; i < element.length(); i += 2) {
-            urlEncoded.append("%");
-            urlEncoded.append(element, i, i + 2);
+        @Override
+        public String getDirName() {
+            return pageDir.getName();
         }
-        return URLDecoder.decode(urlEncoded.toString(), inputCharset);
-    }
 
-    private Page createPageFromPathElements(List<String> pathElements, List<String> pageContent) {
-        String pageName = pathElements.get(pathElements.size() - 1);
-        List<String> superPages = pathElements.subList(0, pathElements.size() - 1);
-        Page page = new Page(superPages, pageName, pageContent);
+        @Override
+        public Page read(Consumer<String> messages) {
+            return readPage(pageDir, messages);
+        }
+    }
 
-        System.out.println(
-                String.format("Created: %s - %s",page.getSuperPages(), page.getName()));
+    private static class Revision {
+        private final Path path;
+        private final long size;
 
-        return page;
+        private Revision(Path path, long size) {
+            this.path = path;
+            this.size = size;
+        }
     }
 }
-
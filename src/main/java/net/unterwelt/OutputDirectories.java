@@ -0,0 +1,44 @@
+package net.unterwelt;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Create the namespace directories of the pages' files, each only once. The directories are
+ * expected to stay while the pages are written.
+ *
+ * <p>Files.createDirectories checks every ancestor again for each page, although most pages share
+ * their directory with many others. Here a directory that was created or found is remembered, so
+ * the next page in it needs no file system access at all, and a new directory only checks its
+ * ancestors up to the first known one.
+ */
+class OutputDirectories {
+
+    private final Set<Path> knownDirs = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Create the directory and its missing ancestors. Can be called concurrently.
+     *
+     * @param dir the directory; null for none
+     * @throws IOException if a directory can't be created, e.g. because a file has its name
+     */
+    void create(Path dir) throws IOException {
+        if (dir == null || knownDirs.contains(dir)) {
+            return;
+        }
+        if (!Files.isDirectory(dir)) {
+            create(dir.getParent());
+            try {
+                Files.createDirectory(dir);
+            } catch (FileAlreadyExistsException e) {
+                if (!Files.isDirectory(dir)) {
+                    throw e;
+                }
+                // created by another thread in the meantime
+            }
+        }
+        knownDirs.add(dir);
+    }
+}
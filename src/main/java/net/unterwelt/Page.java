@@ -1,16 +1,34 @@
 package net.unterwelt;
 
+import java.io.*;
 import java.util.*;
 
 public class Page {
     private final List<String> superPages;
     private final String name;
-    private final List<String> content;
+    private final ContentLoader contentLoader;
+    private final long sourceSize;
+    private PageContent content;
 
     Page(List<String> superPages, String name, List<String> content) {
         this.superPages = superPages;
         this.name = name;
-        this.content = content;
+        this.content = PageContent.of(content);
+        this.contentLoader = null;
+        this.sourceSize = this.content.length();
+    }
+
+    /**
+     * Create a Page whose content is loaded when it is needed.
+     *
+     * @param sourceSize the size of the page's revision file in bytes
+     * @param contentLoader loads the content; may be called again after the content was released
+     */
+    Page(List<String> superPages, String name, long sourceSize, ContentLoader contentLoader) {
+        this.superPages = superPages;
+        this.name = name;
+        this.contentLoader = contentLoader;
+        this.sourceSize = sourceSize;
     }
 
     List<String> getSuperPages() {
@@ -21,10 +39,67 @@ public class Page {
         return name;
     }
 
+    /**
+     * Get the content's lines, each ending with a line break. The content is loaded if needed.
+     * Each access to a line creates a String, so use {@link #getLines()} where CharSequences do.
+     *
+     * @return the lines
+     * @throws UncheckedIOException if the content can't be loaded
+     * @throws IllegalStateException if the content was released and can't be loaded again
+     */
     List<String> getContent() {
+        return getPageContent().asStrings();
+    }
+
+    /**
+     * Get the content's lines without copying them. The content is loaded if needed.
+     *
+     * @return the lines
+     * @throws UncheckedIOException if the content can't be loaded
+     * @throws IllegalStateException if the content was released and can't be loaded again
+     */
+    List<CharSequence> getLines() {
+        return getPageContent().asCharSequences();
+    }
+
+    /**
+     * Get the stored content. The content is loaded if needed.
+     *
+     * @return the content
+     * @throws UncheckedIOException if the content can't be loaded
+     * @throws IllegalStateException if the content was released and can't be loaded again
+     */
+    synchronized PageContent getPageContent() {
+        if (content == null) {
+            if (contentLoader == null) {
+                throw new IllegalStateException("Content of " + name + " was released");
+            }
+            try {
+                content = contentLoader.load();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
         return content;
     }
 
+    /**
+     * Drop the content, e.g. after the page was converted, so it can be garbage collected. The
+     * content of a Page with a ContentLoader is loaded again if it is needed later.
+     */
+    synchronized void releaseContent() {
+        content = null;
+    }
+
+    /**
+     * Get the size of the page's source, which is used to estimate the effort to convert it.
+     *
+     * @return the size of the revision file or the number of characters of the content
+     */
+    long getSourceSize() {
+        return sourceSize;
+    }
+
     /**
      * Return the page's name preceded by all super pages.
      *
@@ -50,4 +125,11 @@ public class Page {
 
         return result.toString();
     }
+
+    /**
+     * Loads a page's content, e.g. from its revision file.
+     */
+    interface ContentLoader {
+        PageContent load() throws IOException;
+    }
 }
@@ -0,0 +1,196 @@
+package net.unterwelt;
+
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * A page's lines stored in a single array instead of a String per line.
+ *
+ * <p>The lines are stored one after another, as Latin-1 bytes if all characters fit, otherwise
+ * as chars. The lines are found by their start offsets. The lines can be viewed as Strings, which
+ * are created when a line is accessed, or as CharSequences, which don't copy the characters.
+ */
+final class PageContent {
+
+    private static final int MAX_LATIN1 = 0xff;
+
+    private final byte[] latin1;  // null if there are characters that are not in Latin-1
+    private final char[] chars;   // null if the characters are stored as Latin-1
+    private final int[] lineStarts;  // has an additional entry: the offset after the last line
+    private final int size;
+
+    private PageContent(byte[] latin1, char[] chars, int[] lineStarts, int size) {
+        this.latin1 = latin1;
+        this.chars = chars;
+        this.lineStarts = lineStarts;
+        this.size = size;
+    }
+
+    /**
+     * Store the lines.
+     *
+     * @param lines the lines
+     * @return the content
+     */
+    static PageContent of(List<String> lines) {
+        int[] lineStarts = new int[lines.size() + 1];
+        StringBuilder text = new StringBuilder();
+        for (int line = 0; line < lines.size(); line++) {
+            lineStarts[line] = text.length();
+            text.append(lines.get(line));
+        }
+        lineStarts[lines.size()] = text.length();
+
+        char[] chars = new char[text.length()];
+        text.getChars(0, text.length(), chars, 0);
+        return of(chars, lineStarts, lines.size());
+    }
+
+    /**
+     * Store the lines found in the text. The arrays are copied, so they can be reused.
+     *
+     * @param text the lines' characters
+     * @param lineStarts the start offsets of the lines, followed by the offset after the last line
+     * @param size the number of lines
+     * @return the content
+     */
+    static PageContent of(char[] text, int[] lineStarts, int size) {
+        int length = lineStarts[size];
+        int[] starts = Arrays.copyOf(lineStarts, size + 1);
+        if (!isLatin1(text, length)) {
+            return new PageContent(null, Arrays.copyOf(text, length), starts, size);
+        }
+
+        byte[] latin1 = new byte[length];
+        for (int i = 0; i < length; i++) {
+            latin1[i] = (byte) text[i];
+        }
+        return new PageContent(latin1, null, starts, size);
+    }
+
+    private static boolean isLatin1(char[] text, int length) {
+        for (int i = 0; i < length; i++) {
+            if (text[i] > MAX_LATIN1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of lines
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of characters of all lines
+     */
+    int length() {
+        return lineStarts[size];
+    }
+
+    char charAt(int index) {
+        return latin1 != null ? (char) (latin1[index] & MAX_LATIN1) : chars[index];
+    }
+
+    /**
+     * Copy characters of the lines, as in String.getChars.
+     */
+    void getChars(int start, int end, char[] destination, int destinationStart) {
+        if (chars != null) {
+            System.arraycopy(chars, start, destination, destinationStart, end - start);
+            return;
+        }
+        for (int i = start; i < end; i++) {
+            destination[destinationStart++] = (char) (latin1[i] & MAX_LATIN1);
+        }
+    }
+
+    private String substring(int start, int end) {
+        if (chars != null) {
+            return new String(chars, start, end - start);
+        }
+        return new String(latin1, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * View the lines as Strings. Each access creates a new String.
+     *
+     * @return the unmodifiable lines
+     */
+    List<String> asStrings() {
+        return new StringLines();
+    }
+
+    /**
+     * View the lines as CharSequences without copying their characters.
+     *
+     * @return the unmodifiable lines
+     */
+    List<CharSequence> asCharSequences() {
+        return new CharSequenceLines();
+    }
+
+    private class StringLines extends AbstractList<String> implements RandomAccess {
+        @Override
+        public String get(int index) {
+            Objects.checkIndex(index, size);
+            return substring(lineStarts[index], lineStarts[index + 1]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private class CharSequenceLines extends AbstractList<CharSequence> implements RandomAccess {
+        @Override
+        public CharSequence get(int index) {
+            Objects.checkIndex(index, size);
+            return new Line(lineStarts[index], lineStarts[index + 1]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * A part of the content. Unlike a String it is never equal to another CharSequence.
+     */
+    private class Line implements CharSequence {
+        private final int start;
+        private final int end;
+
+        private Line(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            Objects.checkIndex(index, end - start);
+            return PageContent.this.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int subStart, int subEnd) {
+            Objects.checkFromToIndex(subStart, subEnd, end - start);
+            return new Line(start + subStart, start + subEnd);
+        }
+
+        @Override
+        public String toString() {
+            return substring(start, end);
+        }
+    }
+}
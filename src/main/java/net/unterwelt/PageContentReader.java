@@ -0,0 +1,36 @@
+package net.unterwelt;
+
+import java.io.*;
+
+/**
+ * Read a page's content straight from its storage without creating a String per line.
+ */
+class PageContentReader extends Reader {
+
+    private final PageContent content;
+    private int position = 0;
+
+    PageContentReader(PageContent content) {
+        this.content = content;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        if (position == content.length()) {
+            return -1;
+        }
+
+        int count = Math.min(length, content.length() - position);
+        content.getChars(position, position + count, buffer, offset);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() {
+        // the content belongs to the page
+    }
+}
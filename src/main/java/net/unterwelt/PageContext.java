@@ -0,0 +1,22 @@
+package net.unterwelt;
+
+/**
+ * The page a streamed content belongs to.
+ */
+class PageContext {
+
+    private final String pageName;
+
+    PageContext(String pageName) {
+        this.pageName = pageName;
+    }
+
+    /**
+     * Get the page's name, which relative links are resolved against.
+     *
+     * @return the page's name without super pages
+     */
+    String getPageName() {
+        return pageName;
+    }
+}
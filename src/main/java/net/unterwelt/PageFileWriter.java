@@ -0,0 +1,347 @@
+package net.unterwelt;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Write the converted pages' files as UTF-8 without a Writer per file.
+ *
+ * <p>The characters are encoded by a pooled CharsetEncoder into a pooled direct buffer, which is
+ * written to the file's FileChannel whenever it's full. Characters that can't be encoded (lone
+ * surrogates) fail the page like with Files.newBufferedWriter. The pool keeps at most as many
+ * encoders and buffers as pages are written at the same time.
+ *
+ * <p>A page that is too big to be held as a String is converted straight into a Writer from
+ * newWriter, which encodes its characters the same way as they arrive.
+ *
+ * <p>How the files are synced to the storage device is chosen by the Sync policy. The writing can
+ * be limited by an IoThrottle.
+ */
+class PageFileWriter {
+
+    static final int DEFAULT_MAX_POOLED_BUFFERS = Runtime.getRuntime().availableProcessors();
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int CHAR_BUFFER_SIZE = 8 * 1024;
+    private static final String TEMP_PREFIX = ".";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * When the written files are forced to the storage device.
+     */
+    enum Sync {
+        /** leave it to the operating system */
+        NONE,
+        /** before each file is closed, so a replaced page is complete after a crash */
+        FILE,
+        /** once for all files at the end, see syncWritten */
+        END
+    }
+
+    private final Sync sync;
+    private final IoThrottle ioThrottle;
+    private final int maxPooledBuffers;
+    private final Queue<Buffers> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledBuffers = new AtomicInteger();
+    private final Queue<Path> unsyncedFiles = new ConcurrentLinkedQueue<>();
+
+    PageFileWriter(Sync sync) {
+        this(sync, IoThrottle.unlimited());
+    }
+
+    PageFileWriter(Sync sync, IoThrottle ioThrottle) {
+        this(sync, ioThrottle, DEFAULT_MAX_POOLED_BUFFERS);
+    }
+
+    /**
+     * @param maxPooledBuffers the number of buffers kept for reuse, e.g. the number of threads
+     * writing pages
+     */
+    PageFileWriter(Sync sync, IoThrottle ioThrottle, int maxPooledBuffers) {
+        this.sync = sync;
+        this.ioThrottle = ioThrottle;
+        this.maxPooledBuffers = maxPooledBuffers;
+    }
+
+    /**
+     * Encode the content and write it into the file.
+     *
+     * @param file the file
+     * @param content the converted page
+     * @param options how to open the file, e.g. CREATE_NEW; WRITE is always added
+     * @throws CharacterCodingException if the content can't be encoded
+     * @throws IOException if the file can't be written
+     */
+    void write(Path file, CharSequence content, OpenOption... options) throws IOException {
+        ioThrottle.write(1, 0);
+        Buffers buffers = acquire();
+        try (FileChannel channel = open(file, options)) {
+            CharBuffer chars = CharBuffer.wrap(content);
+            CharsetEncoder encoder = buffers.encoder.reset();
+            ByteBuffer bytes = buffers.bytes;
+            bytes.clear();
+            CoderResult result;
+            do {
+                result = encoder.encode(chars, bytes, true);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                writeBuffer(channel, bytes);
+            } while (result.isOverflow());
+            while (encoder.flush(bytes).isOverflow()) {
+                writeBuffer(channel, bytes);
+            }
+            writeBuffer(channel, bytes);
+            finish(channel);
+        } finally {
+            release(buffers);
+        }
+    }
+
+    /**
+     * Open the file for a page that is converted straight into it. The characters are encoded
+     * and written while the page is converted; the file is finished when the Writer is closed.
+     *
+     * @param file the file
+     * @param options how to open the file, e.g. CREATE_NEW; WRITE is always added
+     * @return the Writer for the converted page; encoding errors are thrown by its methods
+     * @throws IOException if the file can't be opened
+     */
+    Writer newWriter(Path file, OpenOption... options) throws IOException {
+        ioThrottle.write(1, 0);
+        FileChannel channel = open(file, options);
+        return new ChannelWriter(channel, acquire());
+    }
+
+    /**
+     * Get a new name for a temporary file next to the page's file. The name starts with a dot, so
+     * the file is hidden until it is renamed to the page's file.
+     *
+     * @param file the page's file
+     * @return the temporary file; it may exist, in which case another name can be tried
+     */
+    static Path getTempFile(Path file) {
+        return file.resolveSibling(TEMP_PREFIX + file.getFileName() + "."
+                + Long.toHexString(ThreadLocalRandom.current().nextLong()) + TEMP_SUFFIX);
+    }
+
+    /**
+     * Write the already encoded content into the file.
+     *
+     * @param file the file
+     * @param content the encoded page
+     * @param options how to open the file, e.g. CREATE_NEW; WRITE is always added
+     * @throws IOException if the file can't be written
+     */
+    void write(Path file, byte[] content, OpenOption... options) throws IOException {
+        ioThrottle.write(1, content.length);
+        try (FileChannel channel = open(file, options)) {
+            ByteBuffer bytes = ByteBuffer.wrap(content);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            finish(channel);
+        }
+    }
+
+    private static FileChannel open(Path file, OpenOption... options) throws IOException {
+        Set<OpenOption> openOptions = new HashSet<>(Arrays.asList(options));
+        openOptions.add(StandardOpenOption.WRITE);
+        return FileChannel.open(file, openOptions);
+    }
+
+    private void writeBuffer(FileChannel channel, ByteBuffer bytes) throws IOException {
+        bytes.flip();
+        ioThrottle.write(0, bytes.remaining());
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    private void finish(FileChannel channel) throws IOException {
+        if (sync == Sync.FILE) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Remember a page's file for syncWritten. Is called with the file's final path, after it was
+     * e.g. renamed from a temporary file.
+     *
+     * @param file the page's file
+     */
+    void written(Path file) {
+        if (sync == Sync.END) {
+            unsyncedFiles.add(file);
+        }
+    }
+
+    /**
+     * Force the files given to written to the storage device, if the policy is END. The files are
+     * opened for reading only, so a replaced page that got read-only permissions can be synced
+     * too.
+     *
+     * @throws IOException if a file can't be synced
+     */
+    void syncWritten() throws IOException {
+        for (Path file = unsyncedFiles.poll(); file != null; file = unsyncedFiles.poll()) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                channel.force(true);
+            }
+        }
+    }
+
+    private Buffers acquire() {
+        Buffers buffers = pool.poll();
+        if (buffers != null) {
+            pooledBuffers.decrementAndGet();
+        } else {
+            CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+            buffers = new Buffers(encoder);
+        }
+        return buffers;
+    }
+
+    private void release(Buffers buffers) {
+        if (pooledBuffers.incrementAndGet() > maxPooledBuffers) {
+            pooledBuffers.decrementAndGet();
+            return;
+        }
+        pool.offer(buffers);
+    }
+
+    /**
+     * @return the number of buffers kept for reuse
+     */
+    int getPooledBuffers() {
+        return pooledBuffers.get();
+    }
+
+    private static class Buffers {
+        private final CharsetEncoder encoder;
+        private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+
+        private Buffers(CharsetEncoder encoder) {
+            this.encoder = encoder;
+        }
+    }
+
+    /**
+     * Collects the characters in the pooled char buffer and encodes them whenever it's full. A
+     * surrogate pair split by the end of the buffer stays in it until the next characters arrive.
+     */
+    private class ChannelWriter extends Writer {
+
+        private final FileChannel channel;
+        private Buffers buffers;
+
+        private ChannelWriter(FileChannel channel, Buffers buffers) {
+            this.channel = channel;
+            this.buffers = buffers;
+            buffers.encoder.reset();
+            buffers.bytes.clear();
+            buffers.chars.clear();
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            CharBuffer chars = getChars();
+            chars.put((char) c);
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            CharBuffer chars = getChars();
+            while (len > 0) {
+                int count = Math.min(len, chars.remaining());
+                chars.put(cbuf, off, count);
+                off += count;
+                len -= count;
+                if (!chars.hasRemaining()) {
+                    encode(false);
+                }
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            CharBuffer chars = getChars();
+            while (len > 0) {
+                int count = Math.min(len, chars.remaining());
+                chars.put(str, off, off + count);
+                off += count;
+                len -= count;
+                if (!chars.hasRemaining()) {
+                    encode(false);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            getChars();
+            encode(false);
+            writeBuffer(channel, buffers.bytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (buffers == null) {
+                return;
+            }
+            try {
+                encode(true);
+                ByteBuffer bytes = buffers.bytes;
+                while (buffers.encoder.flush(bytes).isOverflow()) {
+                    writeBuffer(channel, bytes);
+                }
+                writeBuffer(channel, bytes);
+                finish(channel);
+            } finally {
+                channel.close();
+                release(buffers);
+                buffers = null;
+            }
+        }
+
+        private CharBuffer getChars() throws IOException {
+            if (buffers == null) {
+                throw new IOException("Writer closed");
+            }
+            return buffers.chars;
+        }
+
+        private void encode(boolean endOfInput) throws IOException {
+            CharBuffer chars = buffers.chars;
+            ByteBuffer bytes = buffers.bytes;
+            chars.flip();
+            try {
+                CoderResult result;
+                do {
+                    result = buffers.encoder.encode(chars, bytes, endOfInput);
+                    if (result.isError()) {
+                        result.throwException();
+                    }
+                    if (result.isOverflow()) {
+                        writeBuffer(channel, bytes);
+                    }
+                } while (result.isOverflow());
+            } finally {
+                chars.compact();
+            }
+        }
+    }
+}
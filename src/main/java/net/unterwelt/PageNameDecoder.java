@@ -0,0 +1,80 @@
+package net.unterwelt;
+
+import java.net.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * Decode the names of MoinMoin's page directories, e.g. "Super(2f)Caf(c3a9)" to "Super" and
+ * "Café". MoinMoin encodes the characters that are not allowed in file names as hex bytes in
+ * parentheses, the slashes between super and sub pages, too.
+ */
+class PageNameDecoder {
+
+    private final Charset charset;
+
+    /**
+     * @param charset the charset of the encoded bytes
+     */
+    PageNameDecoder(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Decode the name of a MoinMoin page's directory.
+     *
+     * @param dirName the directory's name
+     * @return the names of the super pages followed by the page's name
+     * @throws IllegalArgumentException if the name can't be decoded
+     * @throws IndexOutOfBoundsException if the name can't be decoded
+     */
+    List<String> decode(String dirName) {
+        String decodedLongName = decodeParentheses(dirName);
+        String[] elements = decodedLongName.split("/");
+        return Arrays.asList(elements);
+    }
+
+    /**
+     * Decode the elements characters between parentheses.
+     *
+     * <p>MoinMoin unfortunately puts adjoining UTF-8 encodings within the same parentheses so
+     * simple replacing and decoding won't work.
+     *
+     * @param element the element in MoinMoin's format
+     * @return the element's content as a regular string
+     */
+    private String decodeParentheses(String element) {
+        StringBuilder decodedName = new StringBuilder();
+
+        for (int i = 0; i < element.length(); i++) {
+            int parenthesisStart = element.indexOf('(', i);
+            if (parenthesisStart < 0) {
+                decodedName.append(element.substring(i));
+                break;  // no more ( in element
+            }
+
+            int parenthesisEnd = element.indexOf(')', parenthesisStart);
+            if (parenthesisEnd < 0) {
+                throw new IllegalArgumentException("Opening parenthesis without closing " +
+                        "parenthesis found in '" + element + "'");
+            }
+
+            String beforeParenthesis = element.substring(i, parenthesisStart);
+            decodedName.append(beforeParenthesis);
+            String inParentheses = element.substring(parenthesisStart + 1, parenthesisEnd);
+            decodedName.append(decodeHex(inParentheses));
+
+            i = parenthesisEnd;
+        }
+        return decodedName.toString();
+    }
+
+    private String decodeHex(String element) {
+        StringBuilder urlEncoded = new StringBuilder();
+        for (int i = 0; i < element.length(); i += 2) {
+            urlEncoded.append("%");
+            urlEncoded.append(element, i, i + 2);
+        }
+        return URLDecoder.decode(urlEncoded.toString(), charset);
+    }
+}
@@ -0,0 +1,463 @@
+package net.unterwelt;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Convert the MoinMoin pages in stages connected by bounded queues: read the pages, check them
+ * for incompatibilities, parse them and write them. The stages run at the same time, so reading,
+ * parsing and writing overlap, and only the pages in the queues and stages are kept in memory.
+ *
+ * <p>The output files are claimed in the order of the pages (after a page was parsed), so pages
+ * whose names map to the same file fail in the same way as without concurrency. The files are
+ * created by the write stage. A page that can't be read, parsed or written is reported and
+ * skipped; the other pages are still converted.
+ *
+ * <p>The parse stage converts the largest of its pending pages first, so a big page doesn't end
+ * up being converted alone after all the small pages. Up to queue size pages are pending in the
+ * parse stage, so the big pages among them can be found.
+ *
+ * <p>The converted pages waiting for the write stage hold at most max pending chars (a page
+ * bigger than that alone), so a few huge pages can't fill the memory. The parse stage waits
+ * until enough of them were written. Pages from min spooled source size on are converted straight
+ * into a temporary file of the sink instead (if the sink supports it, see PageSink.spool), so
+ * their converted content isn't held in memory at all; the write stage moves the file in place.
+ *
+ * <p>On storage with a high latency (e.g. NFS) reading and writing a page is mostly waiting for
+ * the file system. In the virtual threads mode each page is read and written on its own virtual
+ * thread, so many more pages can wait at the same time than with platform threads.
+ */
+class PagePipeline {
+
+    static final int DEFAULT_QUEUE_SIZE = 64;
+    static final int DEFAULT_IO_THREADS = 2;
+    static final int DEFAULT_MAX_PENDING_CHARS = 64 * 1024 * 1024;
+    static final long DEFAULT_MIN_SPOOLED_SOURCE_SIZE = 1024 * 1024;
+
+    private static final int MAX_IO_THREADS = 256;
+    private static final int MAX_VIRTUAL_THREADS = 4096;
+    private static final int MAX_THREADS = 4 * Runtime.getRuntime().availableProcessors();
+
+    private final PageSource pageSource;
+    private final IncompatibilityLogger incompatibilityLogger;
+    private final DokuWikiWriter dokuWikiWriter;
+    private final int threads;
+    private final int ioThreads;
+    private final int virtualThreads;
+    private final int queueSize;
+    private final Set<Path> claimedOutputPaths = new HashSet<>();
+
+    private PageSink pageSink;
+    private int maxPendingChars = DEFAULT_MAX_PENDING_CHARS;
+    private long minSpooledSourceSize = DEFAULT_MIN_SPOOLED_SOURCE_SIZE;
+    private Semaphore pendingChars;
+    private long autoTuningIntervalMillis = 0;
+    private IoThrottle progressIoThrottle = null;
+    private long progressIntervalMillis = 0;
+    private Map<String, Integer> finalSettings = Collections.emptyMap();
+
+    private int readPages = 0;
+    private volatile int writtenPages = 0;
+    private StringBuilder warnings;
+    private String report;
+
+    /**
+     * @param threads the number of threads checking and parsing pages
+     * @param ioThreads the number of threads reading and writing pages
+     * @param queueSize the number of pages each queue between two stages can hold
+     */
+    PagePipeline(PageSource pageSource, IncompatibilityLogger incompatibilityLogger,
+                 DokuWikiWriter dokuWikiWriter, int threads, int ioThreads, int queueSize) {
+        this(pageSource, incompatibilityLogger, dokuWikiWriter, threads, ioThreads, 0, queueSize);
+    }
+
+    /**
+     * @param threads the number of threads checking and parsing pages
+     * @param ioThreads the number of threads reading and writing pages
+     * @param virtualThreads the maximum number of pages read and written at the same time on
+     * virtual threads; 0 to use ioThreads platform threads (also used if the runtime has no
+     * virtual threads)
+     * @param queueSize the number of pages each queue between two stages can hold
+     */
+    PagePipeline(PageSource pageSource, IncompatibilityLogger incompatibilityLogger,
+                 DokuWikiWriter dokuWikiWriter, int threads, int ioThreads, int virtualThreads,
+                 int queueSize) {
+        this.pageSource = pageSource;
+        this.incompatibilityLogger = incompatibilityLogger;
+        this.dokuWikiWriter = dokuWikiWriter;
+        this.pageSink = dokuWikiWriter;
+        this.threads = threads;
+        this.ioThreads = ioThreads;
+        this.virtualThreads = virtualThreads;
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Convert all pages and write the incompatibility warnings.
+     *
+     * @param version the converter's version for the warnings
+     * @param writeWarnings false if the warnings should not be written to a file
+     * @return the number of written pages
+     * @throws IllegalStateException if a stage stopped on a fatal error, e.g. out of memory
+     */
+    int run(String version, boolean writeWarnings) {
+        warnings = incompatibilityLogger.startReport(version);
+        pendingChars = new Semaphore(maxPendingChars);
+        BlockingQueue<PipelinePage> crawlQueue = new ArrayBlockingQueue<>(queueSize);
+        BlockingQueue<PipelinePage> readQueue = new ArrayBlockingQueue<>(queueSize);
+        BlockingQueue<PipelinePage> checkQueue = new ArrayBlockingQueue<>(queueSize);
+        BlockingQueue<PipelinePage> parseQueue = new ArrayBlockingQueue<>(queueSize);
+
+        boolean useVirtualThreads = useVirtualThreads();
+        PipelineStage readStage = createIoStage("read", useVirtualThreads, crawlQueue, readQueue,
+                this::read, this::countRead);
+        PipelineStage checkStage = new PipelineStage("check",
+                WorkerThreads.newPlatformThreads("pipeline-check", threads), 2 * threads,
+                readQueue, checkQueue, this::check, this::addWarnings);
+        PipelineStage parseStage = new PipelineStage("parse",
+                new LargestFirstExecutor("pipeline-parse", threads), this::getSourceSize,
+                getParsePendingPages(threads), checkQueue, parseQueue, this::parse,
+                this::claimOutputPath);
+        PipelineStage writeStage = createIoStage("write", useVirtualThreads, parseQueue, null,
+                this::write, this::countWritten);
+
+        List<PipelineStage> pipelineStages = List.of(readStage, checkStage, parseStage,
+                writeStage);
+        List<Thread> stages = new ArrayList<>();
+        stages.add(new Thread(() -> crawl(crawlQueue), "pipeline-crawl"));
+        for (PipelineStage stage : pipelineStages) {
+            stages.add(new Thread(() -> runStage(stage, stages), "pipeline-" + stage.getName()));
+        }
+
+        ConcurrencyController controller = null;
+        if (autoTuningIntervalMillis > 0) {
+            controller = new ConcurrencyController(() -> writtenPages, autoTuningIntervalMillis);
+            IntUnaryOperator ioPendingPages = useVirtualThreads ? p -> p : p -> 2 * p;
+            int maxIoThreads = useVirtualThreads ? MAX_VIRTUAL_THREADS : MAX_IO_THREADS;
+            controller.addStage(readStage, maxIoThreads, ioPendingPages);
+            controller.addStage(parseStage, MAX_THREADS, this::getParsePendingPages);
+            controller.addStage(writeStage, maxIoThreads, ioPendingPages);
+            controller.start();
+        }
+        ProgressReporter progressReporter = null;
+        if (progressIoThrottle != null) {
+            progressReporter = new ProgressReporter(() -> writtenPages, progressIoThrottle,
+                    progressIntervalMillis);
+            progressReporter.start();
+        }
+
+        for (Thread stage : stages) {
+            stage.start();
+        }
+        try {
+            for (Thread stage : stages) {
+                stage.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Thread stage : stages) {
+                stage.interrupt();
+            }
+        } finally {
+            if (controller != null) {
+                controller.stop();
+                finalSettings = controller.getSettings();
+            }
+            if (progressReporter != null) {
+                progressReporter.stop();
+            }
+        }
+        for (PipelineStage stage : pipelineStages) {
+            if (stage.getFatalError() != null) {
+                throw new IllegalStateException("Stage " + stage.getName() + " failed",
+                        stage.getFatalError());
+            }
+        }
+
+        report = incompatibilityLogger.finishReport(warnings, writeWarnings);
+        return writtenPages;
+    }
+
+    /**
+     * Write the converted pages somewhere else than into the DokuWikiWriter's directory, e.g. into
+     * an archive. The sink's commit is called in the order of the pages; the sink isn't closed.
+     *
+     * @param pageSink receives the converted pages
+     */
+    void writeTo(PageSink pageSink) {
+        this.pageSink = pageSink;
+    }
+
+    /**
+     * Run the stage. If it stops on a fatal error, the other stages are interrupted, so the
+     * stages before it don't wait forever for room in its queue.
+     */
+    private static void runStage(PipelineStage stage, List<Thread> stages) {
+        stage.run();
+        if (stage.getFatalError() != null) {
+            for (Thread thread : stages) {
+                if (thread != Thread.currentThread()) {
+                    thread.interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Limit the size of the converted pages waiting to be written.
+     *
+     * @param maxChars the maximum number of characters, see DEFAULT_MAX_PENDING_CHARS
+     */
+    void limitPendingOutput(int maxChars) {
+        maxPendingChars = maxChars;
+    }
+
+    /**
+     * Convert the pages from the given source size on straight into a temporary file of the sink
+     * instead of into a String.
+     *
+     * @param sourceSize the page's source size, see Page.getSourceSize; 0 for all pages
+     */
+    void spoolPagesFrom(long sourceSize) {
+        minSpooledSourceSize = sourceSize;
+    }
+
+    /**
+     * Adjust the number of threads of the read, parse and write stages while running, see
+     * ConcurrencyController. The given numbers of threads are used as a start.
+     *
+     * @param intervalMillis the time between two adjustments
+     */
+    void enableAutoTuning(long intervalMillis) {
+        autoTuningIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * Print the written pages and the throughput while running, see ProgressReporter.
+     *
+     * @param ioThrottle counts the read and written bytes
+     * @param intervalMillis the time between two progress lines
+     */
+    void enableProgress(IoThrottle ioThrottle, long intervalMillis) {
+        progressIoThrottle = ioThrottle;
+        progressIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * Get the numbers of threads the stages had at the end of the last run with auto tuning.
+     *
+     * @return the stages' names and numbers of threads; empty without auto tuning
+     */
+    Map<String, Integer> getFinalSettings() {
+        return finalSettings;
+    }
+
+    private int getParsePendingPages(int parseThreads) {
+        return Math.max(2 * parseThreads, queueSize);
+    }
+
+    /**
+     * Get the incompatibility warnings of the last run.
+     *
+     * @return the warnings as written to the file
+     */
+    String getReport() {
+        return report;
+    }
+
+    /**
+     * Get the number of pages that were read, including pages that failed later.
+     *
+     * @return the number of read pages
+     */
+    int getReadPages() {
+        return readPages;
+    }
+
+    private boolean useVirtualThreads() {
+        if (virtualThreads <= 0) {
+            return false;
+        }
+        if (!WorkerThreads.areVirtualThreadsAvailable()) {
+            System.out.println("Virtual threads are not available in Java "
+                    + Runtime.version().feature() + ", using " + ioThreads
+                    + " threads for reading and writing");
+            return false;
+        }
+        return true;
+    }
+
+    private PipelineStage createIoStage(String name, boolean useVirtualThreads,
+                                        BlockingQueue<PipelinePage> input,
+                                        BlockingQueue<PipelinePage> output,
+                                        Consumer<PipelinePage> work,
+                                        Predicate<PipelinePage> finish) {
+        if (useVirtualThreads) {
+            return new PipelineStage(name, WorkerThreads.newVirtualThreads(), virtualThreads,
+                    input, output, work, finish);
+        }
+        return new PipelineStage(name, WorkerThreads.newPlatformThreads("pipeline-" + name,
+                ioThreads), 2 * ioThreads, input, output, work, finish);
+    }
+
+    /**
+     * Pass on the source's entries, then END. When interrupted, e.g. because a stage stopped on a
+     * fatal error, END is not passed on, since the read stage might not take it anymore.
+     */
+    private void crawl(BlockingQueue<PipelinePage> entries) {
+        try {
+            long[] sequenceNumber = {0};
+            try {
+                pageSource.findPages(entry ->
+                        entries.put(new PipelinePage(sequenceNumber[0]++, entry)));
+            } catch (RuntimeException | Error e) {
+                entries.put(PipelinePage.END);
+                throw e;
+            }
+            entries.put(PipelinePage.END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void read(PipelinePage pipelinePage) {
+        pipelinePage.setPage(pipelinePage.getEntry().read(pipelinePage::addMessage));
+    }
+
+    private boolean countRead(PipelinePage pipelinePage) {
+        if (pipelinePage.getPage() == null) {
+            return false;
+        }
+        readPages++;
+        return true;
+    }
+
+    private void check(PipelinePage pipelinePage) {
+        pipelinePage.setWarnings(incompatibilityLogger.findWarnings(pipelinePage.getPage()));
+    }
+
+    private boolean addWarnings(PipelinePage pipelinePage) {
+        warnings.append(pipelinePage.getWarnings());
+        pipelinePage.setWarnings(null);
+        return true;
+    }
+
+    private long getSourceSize(PipelinePage pipelinePage) {
+        return pipelinePage.getPage().getSourceSize();
+    }
+
+    /**
+     * Convert the page and release its content, so only the pages waiting in the queues hold
+     * their source lines.
+     */
+    private void parse(PipelinePage pipelinePage) {
+        Page page = pipelinePage.getPage();
+        try {
+            if (page.getSourceSize() < minSpooledSourceSize || !spool(pipelinePage)) {
+                pipelinePage.setConverted(dokuWikiWriter.convert(page));
+            }
+        } finally {
+            page.releaseContent();
+        }
+    }
+
+    /**
+     * Convert the page straight into a temporary file of the sink.
+     *
+     * @return false if the sink needs the converted page as a String
+     */
+    private boolean spool(PipelinePage pipelinePage) {
+        Page page = pipelinePage.getPage();
+        try {
+            SpooledPage spooledPage = pageSink.spool(dokuWikiWriter.getOutputPath(page));
+            if (spooledPage == null) {
+                return false;
+            }
+            pipelinePage.setSpooledPage(spooledPage);
+            try (Writer out = spooledPage.getWriter()) {
+                dokuWikiWriter.convert(page, out);
+            }
+        } catch (IOException | RuntimeException e) {
+            pipelinePage.setFailure(e);
+            deleteSpooledPage(pipelinePage);
+        }
+        return true;
+    }
+
+    /**
+     * Delete the temporary file of a page that failed.
+     */
+    private static void deleteSpooledPage(PipelinePage pipelinePage) {
+        SpooledPage spooledPage = pipelinePage.getSpooledPage();
+        if (spooledPage == null) {
+            return;
+        }
+        pipelinePage.setSpooledPage(null);
+        try {
+            spooledPage.delete();
+        } catch (IOException e) {
+            pipelinePage.getFailure().addSuppressed(e);
+        }
+    }
+
+    /**
+     * Reserve the page's file in the order of the pages, so the first of several pages with the
+     * same file wins, as it does when the files are created one after the other.
+     */
+    private boolean claimOutputPath(PipelinePage pipelinePage) {
+        Path outputPath = dokuWikiWriter.getOutputPath(pipelinePage.getPage());
+        if (!claimedOutputPaths.add(outputPath)) {
+            pipelinePage.setFailure(new FileAlreadyExistsException(outputPath.toString()));
+            deleteSpooledPage(pipelinePage);
+            return false;
+        }
+        pipelinePage.setOutputPath(outputPath);
+        try {
+            pendingChars.acquire(getPendingChars(pipelinePage));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pipelinePage.setFailure(e);
+            deleteSpooledPage(pipelinePage);
+            return false;
+        }
+        return true;
+    }
+
+    private int getPendingChars(PipelinePage pipelinePage) {
+        String converted = pipelinePage.getConverted();
+        return converted != null ? Math.min(converted.length(), maxPendingChars) : 0;
+    }
+
+    private void write(PipelinePage pipelinePage) {
+        int chars = getPendingChars(pipelinePage);
+        try {
+            if (pipelinePage.getSpooledPage() != null) {
+                pageSink.write(pipelinePage.getOutputPath(), pipelinePage.getSpooledPage());
+                pipelinePage.setSpooledPage(null);
+            } else {
+                pageSink.write(pipelinePage.getOutputPath(), pipelinePage.getConverted());
+                pipelinePage.setConverted(null);
+            }
+        } catch (IOException e) {
+            pipelinePage.setFailure(e);
+            deleteSpooledPage(pipelinePage);
+        } finally {
+            pendingChars.release(chars);
+        }
+    }
+
+    private boolean countWritten(PipelinePage pipelinePage) {
+        try {
+            pageSink.commit(pipelinePage.getOutputPath());
+        } catch (IOException e) {
+            pipelinePage.setFailure(e);
+            return false;
+        }
+        dokuWikiWriter.printWritten(pipelinePage.getPage());
+        writtenPages++;
+        return true;
+    }
+}
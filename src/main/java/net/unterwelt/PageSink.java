@@ -0,0 +1,65 @@
+package net.unterwelt;
+
+import java.io.*;
+import java.nio.file.*;
+
+/**
+ * Where the converted pages go, e.g. files in the DokuWiki pages directory or an archive.
+ */
+interface PageSink extends Closeable {
+
+    /**
+     * Write the converted page or prepare writing it. Is called on several threads for different
+     * pages at the same time, in any order.
+     *
+     * @param outputPath the page's file, see DokuWikiWriter.getOutputPath
+     * @param content the converted page
+     * @throws IOException if the page can't be written
+     */
+    void write(Path outputPath, String content) throws IOException;
+
+    /**
+     * Create a temporary file a big page is converted straight into, so the page isn't held in
+     * memory as a String. Is called on several threads for different pages at the same time. The
+     * file is either passed to write(Path, SpooledPage) or deleted.
+     *
+     * @param outputPath the page's file, see DokuWikiWriter.getOutputPath
+     * @return the temporary file, or null if the sink needs the converted page as a String, e.g.
+     * to compare it with an existing file
+     * @throws IOException if the temporary file can't be created
+     */
+    default SpooledPage spool(Path outputPath) throws IOException {
+        return null;
+    }
+
+    /**
+     * Write the page that was converted into the temporary file from spool. Is called like
+     * write(Path, String).
+     *
+     * @param outputPath the page's file
+     * @param spooledPage the converted page; its Writer was closed
+     * @throws IOException if the page can't be written
+     */
+    default void write(Path outputPath, SpooledPage spooledPage) throws IOException {
+        throw new UnsupportedOperationException("Pages can't be spooled");
+    }
+
+    /**
+     * Finish writing the page. Is called on one thread in the order of the pages, after the
+     * page's write returned.
+     *
+     * @param outputPath the page's file
+     * @throws IOException if the page can't be written
+     */
+    default void commit(Path outputPath) throws IOException {
+    }
+
+    /**
+     * Finish writing all pages.
+     *
+     * @throws IOException if the pages can't be written
+     */
+    @Override
+    default void close() throws IOException {
+    }
+}
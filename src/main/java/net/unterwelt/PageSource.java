@@ -0,0 +1,42 @@
+package net.unterwelt;
+
+import java.util.function.*;
+
+/**
+ * Where the MoinMoin pages come from, e.g. the pages directory or a backup archive.
+ */
+interface PageSource {
+
+    /**
+     * Pass the pages to the consumer in the source's order. Problems with the source are printed;
+     * the pages found until then are still passed on.
+     *
+     * @param consumer receives the pages
+     * @throws InterruptedException if the consumer was interrupted
+     */
+    void findPages(EntryConsumer consumer) throws InterruptedException;
+
+    /**
+     * A page found by a PageSource, which might not have been read yet.
+     */
+    interface Entry {
+
+        /**
+         * @return the name of the page's directory, for messages
+         */
+        String getDirName();
+
+        /**
+         * Read the page. Problems with the page are reported as messages, so they don't stop the
+         * conversion. Can be called on any thread.
+         *
+         * @param messages receives the messages about the page, e.g. why it was skipped
+         * @return the Page or null if the page was skipped
+         */
+        Page read(Consumer<String> messages);
+    }
+
+    interface EntryConsumer {
+        void accept(Entry entry) throws InterruptedException;
+    }
+}
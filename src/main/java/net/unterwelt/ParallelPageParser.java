@@ -0,0 +1,166 @@
+package net.unterwelt;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Parse the content of big pages in chunks on several threads.
+ *
+ * <p>Chunks start after blank lines where possible, because formats rarely continue across
+ * paragraphs. Each chunk except the first is parsed speculatively by its own Parser, starting
+ * without active formats. The chunks are then joined in order: if the state at the end of the
+ * previous chunk differs from the state a chunk was parsed with, the chunk is parsed again with
+ * the correct state. The result is the same as parsing all lines with a single Parser.
+ */
+class ParallelPageParser {
+
+    private static final int DEFAULT_MIN_CHUNK_LINES = 10_000;
+
+    private final ParserPool parserPool;
+    private final int minChunkLines;
+    private final int maxChunks;
+    private final Executor executor;
+
+    /**
+     * @param parserPool provides the Parsers for the speculatively parsed chunks; they must use
+     * the same options as the Parser passed to parse
+     */
+    ParallelPageParser(ParserPool parserPool) {
+        this(parserPool, DEFAULT_MIN_CHUNK_LINES, Runtime.getRuntime().availableProcessors(),
+                ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param parserPool provides the Parsers for the speculatively parsed chunks; they must use
+     * the same options as the Parser passed to parse
+     * @param minChunkLines pages are only split if each chunk gets at least this many lines
+     * @param maxChunks the maximum number of chunks per page
+     * @param executor runs the speculative parsing
+     */
+    ParallelPageParser(ParserPool parserPool, int minChunkLines, int maxChunks,
+                       Executor executor) {
+        this.parserPool = parserPool;
+        this.minChunkLines = minChunkLines;
+        this.maxChunks = maxChunks;
+        this.executor = executor;
+    }
+
+    /**
+     * Parse the page's lines. Afterwards the Parser is in the same state as if it had parsed all
+     * lines itself.
+     *
+     * @param parser the Parser to continue with; parses the first chunk
+     * @param content the page's lines
+     * @param pageName the page's name
+     * @return the parsed lines
+     */
+    String parse(Parser parser, List<String> content, String pageName) {
+        List<Integer> chunkStarts = findChunkStarts(content);
+        if (chunkStarts.size() < 2) {
+            return parseLines(parser, content, pageName);
+        }
+        chunkStarts.add(content.size());
+
+        List<CompletableFuture<ChunkResult>> speculativeResults = new ArrayList<>();
+        for (int chunk = 1; chunk < chunkStarts.size() - 1; chunk++) {
+            List<String> lines = content.subList(chunkStarts.get(chunk), chunkStarts.get(chunk + 1));
+            speculativeResults.add(CompletableFuture.supplyAsync(
+                    () -> parseSpeculatively(lines, pageName), executor));
+        }
+
+        try {
+            StringBuilder output = new StringBuilder();
+            output.append(parseLines(parser, content.subList(0, chunkStarts.get(1)), pageName));
+
+            for (int chunk = 1; chunk < chunkStarts.size() - 1; chunk++) {
+                ChunkResult result = speculativeResults.get(chunk - 1).join();
+                if (result.startState.equals(parser.snapshotState())) {
+                    if (result.failure != null) {
+                        throw result.failure;
+                    }
+                    output.append(result.output);
+                    parser.restoreState(result.endState);
+                } else {
+                    List<String> lines =
+                            content.subList(chunkStarts.get(chunk), chunkStarts.get(chunk + 1));
+                    output.append(parseLines(parser, lines, pageName));
+                }
+            }
+
+            return output.toString();
+        } finally {
+            for (CompletableFuture<ChunkResult> speculativeResult : speculativeResults) {
+                speculativeResult.cancel(false);
+            }
+        }
+    }
+
+    private List<Integer> findChunkStarts(List<String> content) {
+        List<Integer> chunkStarts = new ArrayList<>();
+        chunkStarts.add(0);
+
+        int chunkCount = Math.min(maxChunks, content.size() / Math.max(minChunkLines, 1));
+        if (chunkCount < 2) {
+            return chunkStarts;
+        }
+
+        int chunkSize = content.size() / chunkCount;
+        for (int chunk = 1; chunk < chunkCount; chunk++) {
+            int chunkStart = findStartAfterBlankLine(content, chunk * chunkSize, chunkSize / 2);
+            if (chunkStart > chunkStarts.get(chunkStarts.size() - 1)
+                    && chunkStart < content.size()) {
+                chunkStarts.add(chunkStart);
+            }
+        }
+        return chunkStarts;
+    }
+
+    private static int findStartAfterBlankLine(List<String> content, int from, int maxDistance) {
+        int end = Math.min(from + maxDistance, content.size() - 1);
+        for (int i = from; i < end; i++) {
+            if (content.get(i).isBlank()) {
+                return i + 1;
+            }
+        }
+        return from;
+    }
+
+    private ChunkResult parseSpeculatively(List<String> lines, String pageName) {
+        Parser parser = parserPool.acquire();
+        try {
+            parser.reset();
+            Parser.State startState = parser.snapshotState();
+            try {
+                String output = parseLines(parser, lines, pageName);
+                return new ChunkResult(startState, output, parser.snapshotState(), null);
+            } catch (RuntimeException e) {
+                return new ChunkResult(startState, null, null, e);
+            }
+        } finally {
+            parserPool.release(parser);
+        }
+    }
+
+    private static String parseLines(Parser parser, List<String> lines, String pageName) {
+        StringBuilder output = new StringBuilder();
+        for (String line : lines) {
+            output.append(parser.parse(line, pageName));
+        }
+        return output.toString();
+    }
+
+    private static class ChunkResult {
+        final Parser.State startState;
+        final String output;
+        final Parser.State endState;
+        final RuntimeException failure;
+
+        private ChunkResult(Parser.State startState, String output, Parser.State endState,
+                            RuntimeException failure) {
+            this.startState = startState;
+            this.output = output;
+            this.endState = endState;
+            this.failure = failure;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package net.unterwelt;
 
+import java.io.*;
 import java.util.*;
 import net.unterwelt.rules.*;
 
@@ -9,20 +10,31 @@ import net.unterwelt.rules.*;
 class Parser {
 
     private static final String IMPORT_WARNING = "FIXME **//imported from MoinMoin//**\n\n";
+    private static final int READ_BUFFER_SIZE = 8192;
 
-    final private List<WholeLineRule> wholeLineRules;
-    final private List<LineStartRule> lineStartRules;
+    final private HeadingRule headingRule;
+    final private List<LineStartRule> listRules;
     final private TableRule tableRule;
+    private final LineClassifier lineClassifier;
 
     final private List<NoFormattingRule> noFormattingRules;
     private final boolean addFixMe;
     private final boolean cleanTags;
-    private NoFormattingRule activeNoFormattingRule = null;
 
     final private LinkRule linkRule;
 
     final private List<LineContentRule> lineContentRules;
-    final private List<LineContentRule> activeLineContentRules = new ArrayList<>();
+
+    private final ConversionState state;
+
+    private final TokenAutomaton<TokenHandler> tokenAutomaton;
+    private final TokenAutomaton<TokenHandler> noFormattingEndAutomaton;
+
+    private final boolean minimalMarkup;
+    private final FormatTokenBuffer formatTokens = new FormatTokenBuffer();
+    private final StringBuilder reopenedFormat = new StringBuilder();
+
+    private final ParallelPageParser parallelPageParser;
 
     private final TagCleaner tagCleaner;
     private StringBuilder output;
@@ -33,76 +45,190 @@ class Parser {
     }
 
     Parser(boolean addFixMe, boolean cleanTags){
+        this(addFixMe, cleanTags, EnumSet.noneOf(ParserOption.class));
+    }
+
+    Parser(boolean addFixMe, boolean cleanTags, Set<ParserOption> options) {
         this.addFixMe = addFixMe;
         this.cleanTags = cleanTags;
 
-        wholeLineRules = Collections.singletonList(new HeadingRule());
-
-        lineStartRules = List.of(
-                new SimpleListRule(),
-                new NumeratedListRule()
-        );
+        RuleSet ruleSet = RuleSet.DEFAULT;
+        headingRule = ruleSet.getHeadingRule();
+        listRules = ruleSet.getListRules();
+        tableRule = ruleSet.getTableRule();
+        lineClassifier = new LineClassifier(headingRule, listRules, tableRule);
+        noFormattingRules = ruleSet.getNoFormattingRules();
+        linkRule = ruleSet.getLinkRule();
+        lineContentRules = ruleSet.getLineContentRules();
+
+        state = new ConversionState(lineContentRules);
+
+        boolean vectorizedScan = options.contains(ParserOption.VECTORIZED_SCAN);
+        tokenAutomaton = new TokenAutomaton<>(createTokenHandlers(), vectorizedScan);
+        noFormattingEndAutomaton = new TokenAutomaton<>(createNoFormattingEndHandlers(),
+                vectorizedScan);
+        minimalMarkup = options.contains(ParserOption.MINIMAL_MARKUP);
+
+        if (options.contains(ParserOption.PARALLEL_PAGES)) {
+            Set<ParserOption> chunkOptions = EnumSet.copyOf(options);
+            chunkOptions.remove(ParserOption.PARALLEL_PAGES);
+            parallelPageParser =
+                    new ParallelPageParser(new ParserPool(false, cleanTags, chunkOptions));
+        } else {
+            parallelPageParser = null;
+        }
 
-        tableRule = new TableRule();
+        if (cleanTags) {
+            tagCleaner = new TagCleaner(lineContentRules);
+        } else {
+            tagCleaner = new TagCleaner(new ArrayList<>());
+        }
+    }
 
-        noFormattingRules = List.of(
-                // Highlighting must be checked before NoWiki as they both use {{{...}}}
-                new HighlightingRule(),
-                new NoWikiRule()
-        );
+    /**
+     * Register a handler for each input token. If several tokens are found at the same position,
+     * the longest token is handled first (e.g. bold's ''' before italics' '').
+     */
+    private List<Map.Entry<String, TokenHandler>> createTokenHandlers() {
+        List<Map.Entry<String, TokenHandler>> handlers = new ArrayList<>();
 
-        linkRule = new LinkRule();
+        for (NoFormattingRule rule : noFormattingRules) {
+            handlers.add(Map.entry(rule.getInputStartToken(),
+                    (line, offset, pageName) -> convertNoFormattingStart(rule, line, offset)));
+        }
 
-        lineContentRules = List.of(
-                // bold (''') must be checked before italics ('')
-                new BoldRule(),
-                new ItalicsRule(),
+        handlers.add(Map.entry(linkRule.getInputStartToken(), this::convertLink));
+        handlers.add(Map.entry(tableRule.getInputSeparator(),
+                (line, offset, pageName) -> convertTableSeparator(line, offset)));
+
+        for (FormatState format : state.getFormatStates()) {
+            LineContentRule rule = format.getRule();
+            TokenHandler handler =
+                    (line, offset, pageName) -> convertLineContentRule(format, line, offset);
+            handlers.add(Map.entry(rule.getInputStartToken(), handler));
+            if (!rule.getInputEndToken().equals(rule.getInputStartToken())) {
+                handlers.add(Map.entry(rule.getInputEndToken(), handler));
+            }
+        }
 
-                // in no particular order:
-                new MonospacedRule(),
-                new SubscriptRule(),
-                new SuperscriptRule(),
-                new StrikeThroughRule(),
-                new UnderlinedRule()
-        );
+        return handlers;
+    }
 
-        if (cleanTags) {
-            tagCleaner = new TagCleaner(lineContentRules);
-        } else {
-            tagCleaner = new TagCleaner(new ArrayList<>());
+    private List<Map.Entry<String, TokenHandler>> createNoFormattingEndHandlers() {
+        List<Map.Entry<String, TokenHandler>> handlers = new ArrayList<>();
+        for (NoFormattingRule rule : noFormattingRules) {
+            handlers.add(Map.entry(rule.getInputEndToken(),
+                    (line, offset, pageName) -> convertNoFormattingEnd(rule, line, offset)));
         }
+        return handlers;
     }
 
     String parse(Page page) {
+        reset();
         StringBuilder outputForList = new StringBuilder();
         if (addFixMe) {
             outputForList.append(IMPORT_WARNING);
         }
-        for (String string : page.getContent()) {
-            outputForList.append(parse(string, page.getName()));
+        if (parallelPageParser != null) {
+            outputForList.append(parallelPageParser.parse(this, page.getContent(), page.getName()));
+        } else {
+            for (String string : page.getContent()) {
+                outputForList.append(parse(string, page.getName()));
+            }
         }
         return outputForList.toString();
     }
 
-    String parse(String input, String pageName) {
-        Scanner scanner = new Scanner(input).useDelimiter(System.lineSeparator());
+    /**
+     * Convert the page and write the result while reading, so only the current line is kept in
+     * memory.
+     *
+     * @param page the page to convert
+     * @param out the writer for the converted page
+     * @throws IOException if the page can't be written
+     */
+    void convert(Page page, Writer out) throws IOException {
+        if (parallelPageParser != null) {
+            out.write(parse(page));
+            return;
+        }
+
+        try (Reader in = new PageContentReader(page.getPageContent())) {
+            convert(in, out, new PageContext(page.getName()));
+        }
+    }
+
+    /**
+     * Convert the content read from the Reader line by line and write each converted line right
+     * away. Lines end with '\n' (optionally preceded by '\r'), which is written as '\n'.
+     *
+     * <p>The result is the same as parsing each line with its line break on its own, which is how
+     * a page's content is parsed: in particular empty lines are written as they are, without
+     * reopening and closing active formats.
+     *
+     * @param in the MoinMoin content
+     * @param out the writer for the DokuWiki content
+     * @param context the converted page
+     * @throws IOException if reading or writing fails
+     */
+    void convert(Reader in, Writer out, PageContext context) throws IOException {
+        reset();
+        if (addFixMe) {
+            out.write(IMPORT_WARNING);
+        }
+
         output = new StringBuilder();
+        char[] buffer = new char[READ_BUFFER_SIZE];
+        StringBuilder line = new StringBuilder();
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            int lineStart = 0;
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') {
+                    line.append(buffer, lineStart, i - lineStart);
+                    writeConvertedLine(out, line, true, context.getPageName());
+                    line.setLength(0);
+                    lineStart = i + 1;
+                }
+            }
+            line.append(buffer, lineStart, read - lineStart);
+        }
 
-        while (scanner.hasNext()) {
-            final String line = scanner.nextLine();
+        if (line.length() > 0) {
+            writeConvertedLine(out, line, false, context.getPageName());
+        }
+    }
 
-            boolean wasConverted = convertWholeLine(line);
-            if (wasConverted) {
-                continue;
+    private void writeConvertedLine(Writer out, StringBuilder line, boolean hasLineBreak,
+                                    String pageName) throws IOException {
+        int length = line.length();
+        if (hasLineBreak && length > 0 && line.charAt(length - 1) == '\r') {
+            length--;
+        }
+
+        if (length > 0) {
+            output.setLength(0);
+            convertLine(line.substring(0, length), pageName);
+            if (cleanTags) {
+                out.write(tagCleaner.clean(output.toString()));
+            } else {
+                out.append(output);
             }
+        }
 
-            tableRule.checkActivation(line);  // check before line is trimmed
+        if (hasLineBreak) {
+            out.write('\n');
+        }
+    }
 
-            final String trimmedLine = convertLineStart(line);
+    String parse(String input, String pageName) {
+        Scanner scanner = new Scanner(input).useDelimiter(System.lineSeparator());
+        output = new StringBuilder();
 
-            convertInLineTokens(trimmedLine, pageName);
+        while (scanner.hasNext()) {
+            final boolean isHeading = convertLine(scanner.nextLine(), pageName);
 
-            if (scanner.hasNext()) {
+            if (!isHeading && scanner.hasNext()) {
                 output.append(System.lineSeparator());
             }
         }
@@ -119,176 +245,240 @@ class Parser {
         return parsedString;
     }
 
-    private boolean formattingIsIgnored() {
-        return activeNoFormattingRule != null;
-    }
+    /**
+     * Convert a line without its line break.
+     *
+     * @return true if the line was converted to a heading
+     */
+    private boolean convertLine(String line, String pageName) {
+        final LineClassifier.LineDescriptor descriptor = lineClassifier.classify(line);
 
-    private boolean convertWholeLine(String line) {
-        if (formattingIsIgnored()) {
-            return false;
+        if (!formattingIsIgnored() && descriptor.isHeading()) {
+            headingRule.appendHeading(output, line, descriptor.getHeadingSignifierCount());
+            return true;
         }
 
-        for (WholeLineRule rule : wholeLineRules) {
-            String convertedLine = rule.convert(line);
-            if (!convertedLine.equals(line)) {
-                output.append(convertedLine);
-                return true;
-            }
+        state.getTableState().setRowActive(descriptor.isTableRow());
+
+        if (!formattingIsIgnored() && descriptor.isListItem()) {
+            descriptor.getListRule().appendOutputToken(output, descriptor.getIndentation());
+            convertInLineTokens(line.substring(descriptor.getContentStart(),
+                    descriptor.getContentEnd()), pageName);
+        } else if (descriptor.isBlank()) {
+            reactivateCurrentFormats();
+            writeEndTagsForCurrentFormats();
+            flushFormatTokens();
+        } else {
+            convertInLineTokens(line, pageName);
         }
         return false;
     }
 
-    private String convertLineStart(String line) {
-        if (formattingIsIgnored()) {
-            return line;
-        }
-
-        for (LineStartRule rule : lineStartRules) {
-            String trimmedLine = rule.trimTokenIfPresent(line);
-            if (!trimmedLine.equals(line)) {
-                output.append(rule.getOutputTokenWithIndentation());
-                return trimmedLine;
-            }
-        }
-        return line;
+    private boolean formattingIsIgnored() {
+        return state.getActiveNoFormattingRule() != null;
     }
 
     private void convertInLineTokens(String line, String pageName) {
         reactivateCurrentFormats();
         convertLineContent(line, pageName);
         writeEndTagsForCurrentFormats();
+        flushFormatTokens();
     }
 
     /**
      * Tags that were closed at the end of the previous line need to be reactivated.
      */
     private void reactivateCurrentFormats() {
+        NoFormattingRule activeNoFormattingRule = state.getActiveNoFormattingRule();
         if (formattingIsIgnored() && activeNoFormattingRule.needsCloseAtEnd()) {
-            output.append(activeNoFormattingRule.getOutputStartToken());
+            appendFormatToken(activeNoFormattingRule, true,
+                    state.getNoFormattingOutputStartToken());
+        } else if (minimalMarkup) {
+            for (FormatState activeFormat : state.getActiveFormats()) {
+                reopenedFormat.setLength(0);
+                activeFormat.getRule().onActiveLineStart(reopenedFormat, activeFormat);
+                formatTokens.add(activeFormat.getRule(), true, reopenedFormat.toString());
+            }
         } else {
-            for (LineContentRule activeRule : activeLineContentRules) {
-                activeRule.onActiveLineStart(output);
+            for (FormatState activeFormat : state.getActiveFormats()) {
+                activeFormat.getRule().onActiveLineStart(output, activeFormat);
             }
         }
     }
 
-    private void convertLineContent(String line, String pageName) {
-        for (int i = 0; i < line.length(); i++) {
-            boolean isRegularContent = true;
-            String uncheckedLinePart = line.substring(i);
-
-            // handle active NoFormattingRule
-            if (formattingIsIgnored()) {
-                int processedChars = activeNoFormattingRule.applies(uncheckedLinePart);
-                if (processedChars > 0) {
-                    i = i + deactivateNoFormattingRule(activeNoFormattingRule);
-                } else {
-                    output.append(line.charAt(i));
-                }
-                continue;
-            }
+    private void appendFormatToken(Object format, boolean isStartToken, String token) {
+        if (minimalMarkup) {
+            formatTokens.add(format, isStartToken, token);
+        } else {
+            output.append(token);
+        }
+    }
 
-            // check for NoFormattingRule's start tags
-            boolean activatedNoFormatting = false;
-            for (NoFormattingRule rule : noFormattingRules) {
-                int processedChars = rule.applies(uncheckedLinePart);
-                if (processedChars > 0) {
-                    activateNoFormattingRule(rule);
-                    i += processedChars - 1;
-                    activatedNoFormatting = true;
-                    break;
-                }
-            }
-            if (activatedNoFormatting) {
-                continue;
-            }
+    /**
+     * Write the format tokens that are still needed before content is appended.
+     */
+    private void flushFormatTokens() {
+        if (minimalMarkup) {
+            formatTokens.writeTo(output);
+        }
+    }
 
-            // handle links
-            LinkRule.LinkRuleResult linkRuleResult = linkRule.convert(uncheckedLinePart, pageName);
-            if (linkRuleResult.processedCharacters > 0) {
-                i = i + linkRuleResult.processedCharacters - 1;
-                output.append(linkRuleResult.resultingLink);
-                continue;
+    private void convertLineContent(String line, String pageName) {
+        int i = 0;
+        while (i < line.length()) {
+            TokenAutomaton<TokenHandler> automaton = formattingIsIgnored() ?
+                    noFormattingEndAutomaton : tokenAutomaton;
+
+            // copy regular content up to the next possible token at once
+            int tokenStart = automaton.nextTokenStart(line, i);
+            if (tokenStart > i) {
+                flushFormatTokens();
+                output.append(line, i, tokenStart);
             }
-
-            // handle tables
-            TableRule.TableRuleResult tableRuleResult = tableRule.convert(uncheckedLinePart);
-            if (tableRuleResult.processedCharacters > 0) {
-                i = i + tableRuleResult.processedCharacters - 1;
-                output.append(tableRuleResult.resultingSeparators);
-                continue;
+            i = tokenStart;
+            if (i == line.length()) {
+                break;
             }
 
-            // handle regular rules
-            for (LineContentRule rule : lineContentRules) {
-                if (rule.applies(uncheckedLinePart)) {
-                    isRegularContent = false;
-                    if (rule.isActive()) {
-                        i = i + deactivateRule(rule);
-                    } else {
-                        i = i + activateRule(rule);
-                    }
-                    break;
-                }
-            }
+            int processedChars = convertToken(automaton, line, i, pageName);
 
             // just append if character is not part of a token
-            if (isRegularContent) {
+            if (processedChars > 0) {
+                i += processedChars;
+            } else {
+                flushFormatTokens();
                 output.append(line.charAt(i));
+                i++;
             }
         }
     }
 
-    private void activateNoFormattingRule(NoFormattingRule noFormattingRule) {
-        activeNoFormattingRule = noFormattingRule;
-        noFormattingRule.setActive(true);
+    private int convertToken(TokenAutomaton<TokenHandler> automaton, String line, int offset,
+                             String pageName) {
+        List<TokenHandler> handlers = automaton.match(line, offset);
+        for (int handlerIndex = 0; handlerIndex < handlers.size(); handlerIndex++) {
+            int processedChars = handlers.get(handlerIndex).convert(line, offset, pageName);
+            if (processedChars > 0) {
+                return processedChars;
+            }
+        }
+        return 0;
+    }
 
-        for (int ruleIndex = activeLineContentRules.size(); ruleIndex > 0; ruleIndex--) {
-            output.append(activeLineContentRules.get(ruleIndex - 1).getOutputEndToken());
+    private int convertNoFormattingStart(NoFormattingRule rule, String line, int offset) {
+        int processedChars = rule.applies(line, offset, rule == state.getActiveNoFormattingRule());
+        if (processedChars > 0) {
+            activateNoFormattingRule(rule, line, offset);
         }
+        return processedChars;
+    }
 
-        output.append(noFormattingRule.getOutputStartToken());
+    private int convertNoFormattingEnd(NoFormattingRule rule, String line, int offset) {
+        if (rule != state.getActiveNoFormattingRule() || rule.applies(line, offset, true) == 0) {
+            return 0;
+        }
+        return deactivateNoFormattingRule(rule);
     }
 
-    private int deactivateNoFormattingRule(NoFormattingRule noFormattingRule) {
-        activeNoFormattingRule = null;
-        noFormattingRule.setActive(false);
+    private int convertLink(String line, int offset, String pageName) {
+        LinkRule.LinkRuleResult linkRuleResult = linkRule.convert(line, offset, pageName);
+        if (linkRuleResult.processedCharacters > 0) {
+            flushFormatTokens();
+            output.append(linkRuleResult.resultingLink);
+        }
+        return linkRuleResult.processedCharacters;
+    }
 
-        output.append(noFormattingRule.getOutputEndToken());
+    private int convertTableSeparator(String line, int offset) {
+        TableRule.TableRuleResult tableRuleResult =
+                tableRule.convert(line, offset, state.getTableState());
+        if (tableRuleResult.processedCharacters > 0) {
+            flushFormatTokens();
+            output.append(tableRuleResult.resultingSeparators);
+        }
+        return tableRuleResult.processedCharacters;
+    }
 
-        for (LineContentRule rule : activeLineContentRules) {
-            output.append(rule.getOutputStartToken());
+    private int convertLineContentRule(FormatState format, String line, int offset) {
+        if (!format.getRule().applies(line, offset, format)) {
+            return 0;
+        }
+        if (format.isActive()) {
+            return deactivateRule(format);
+        } else {
+            return activateRule(format);
+        }
+    }
+
+    private void activateNoFormattingRule(NoFormattingRule noFormattingRule, String line,
+                                          int offset) {
+        String outputStartToken = noFormattingRule.getOutputStartToken(line, offset);
+        state.setActiveNoFormattingRule(noFormattingRule, outputStartToken);
+
+        List<FormatState> activeFormats = state.getActiveFormats();
+        for (int formatIndex = activeFormats.size(); formatIndex > 0; formatIndex--) {
+            appendEndToken(activeFormats.get(formatIndex - 1));
         }
 
-        return noFormattingRule.getInputEndToken().length() - 1;  // -1 as i is also increased in loop
+        appendFormatToken(noFormattingRule, true, outputStartToken);
     }
 
-    private int activateRule(LineContentRule rule) {
-        activeLineContentRules.add(rule);
-        rule.setActive(true);
+    private int deactivateNoFormattingRule(NoFormattingRule noFormattingRule) {
+        state.setActiveNoFormattingRule(null, null);
+
+        appendFormatToken(noFormattingRule, false, noFormattingRule.getOutputEndToken());
+
+        reopenFormats(0);
 
-        output.append(rule.getOutputStartToken());
-        return rule.getInputStartToken().length() - 1;  // -1 as i is also increased in loop
+        return noFormattingRule.getInputEndToken().length();
     }
 
-    private int deactivateRule(LineContentRule rule) {
-        final StringBuilder reactivateRules = new StringBuilder();
-        for (int activeRuleIndex = activeLineContentRules.size() - 1; activeRuleIndex >= 0; activeRuleIndex--) {
-            if (rule == activeLineContentRules.get(activeRuleIndex)) {
-                activeLineContentRules.remove(activeRuleIndex);
-                rule.setActive(false);
+    private int activateRule(FormatState format) {
+        state.getActiveFormats().add(format);
+        format.setActive(true);
+
+        appendStartToken(format);
+        return format.getRule().getInputStartToken().length();
+    }
 
-                output.append(rule.getOutputEndToken());
-                output.append(reactivateRules.toString());
-                return rule.getInputEndToken().length() - 1;  // -1 as i is also increased in loop
+    /**
+     * Close the format. Formats that were activated after it are closed before and reopened after
+     * its end token.
+     */
+    private int deactivateRule(FormatState format) {
+        List<FormatState> activeFormats = state.getActiveFormats();
+        for (int formatIndex = activeFormats.size() - 1; formatIndex >= 0; formatIndex--) {
+            FormatState activeFormat = activeFormats.get(formatIndex);
+            if (format == activeFormat) {
+                activeFormats.remove(formatIndex);
+                format.setActive(false);
+
+                appendEndToken(format);
+                reopenFormats(formatIndex);
+                return format.getRule().getInputEndToken().length();
             } else {
-                LineContentRule otherRule = activeLineContentRules.get(activeRuleIndex);
-                output.append(otherRule.getOutputEndToken());
-                reactivateRules.insert(0, otherRule.getOutputStartToken());
+                appendEndToken(activeFormat);
             }
         }
-        output.append(reactivateRules.toString());
-        return 0;
+        reopenFormats(0);
+        return 1;  // format was not in the list of active formats; only its first character is skipped
+    }
+
+    private void reopenFormats(int fromIndex) {
+        List<FormatState> activeFormats = state.getActiveFormats();
+        for (int formatIndex = fromIndex; formatIndex < activeFormats.size(); formatIndex++) {
+            appendStartToken(activeFormats.get(formatIndex));
+        }
+    }
+
+    private void appendStartToken(FormatState format) {
+        LineContentRule rule = format.getRule();
+        appendFormatToken(rule, true, rule.getOutputStartToken());
+    }
+
+    private void appendEndToken(FormatState format) {
+        LineContentRule rule = format.getRule();
+        appendFormatToken(rule, false, rule.getOutputEndToken(format));
     }
 
     /**
@@ -296,12 +486,147 @@ class Parser {
      * recognized when they are closed in the same line.
      */
     private void writeEndTagsForCurrentFormats() {
+        NoFormattingRule activeNoFormattingRule = state.getActiveNoFormattingRule();
         if (formattingIsIgnored() && activeNoFormattingRule.needsCloseAtEnd()) {
-            output.append(activeNoFormattingRule.getOutputEndToken());
+            appendFormatToken(activeNoFormattingRule, false,
+                    activeNoFormattingRule.getOutputEndToken());
         } else {
-            for (int index = activeLineContentRules.size() - 1; index >= 0; index--) {
-                output.append(activeLineContentRules.get(index).getOutputEndToken());
+            List<FormatState> activeFormats = state.getActiveFormats();
+            for (int formatIndex = activeFormats.size() - 1; formatIndex >= 0; formatIndex--) {
+                appendEndToken(activeFormats.get(formatIndex));
             }
         }
     }
+
+    /**
+     * Converts the token found at the offset.
+     */
+    private interface TokenHandler {
+
+        /**
+         * Convert the token and write the result to the output.
+         *
+         * @return the number of processed characters or 0 if the token was not converted
+         */
+        int convert(String line, int offset, String pageName);
+    }
+
+    /**
+     * Forget the state of the previous conversion, e.g. formats that were not closed.
+     */
+    void reset() {
+        state.reset();
+    }
+
+    /**
+     * Get a copy of the state that is carried from one line to the next.
+     *
+     * @return the state, which can be restored in any Parser with the same rules
+     */
+    State snapshotState() {
+        List<FormatState> formatStates = state.getFormatStates();
+        List<FormatState> activeFormats = state.getActiveFormats();
+        int[] activeRules = new int[activeFormats.size()];
+        for (int i = 0; i < activeRules.length; i++) {
+            activeRules[i] = formatStates.indexOf(activeFormats.get(i));
+        }
+
+        boolean[] weirdRules = new boolean[formatStates.size()];
+        for (int i = 0; i < weirdRules.length; i++) {
+            weirdRules[i] = formatStates.get(i).isWeird();
+        }
+
+        int activeNoFormattingRuleIndex = State.NO_RULE;
+        if (formattingIsIgnored()) {
+            activeNoFormattingRuleIndex = noFormattingRules.indexOf(state.getActiveNoFormattingRule());
+        }
+
+        TableState tableState = state.getTableState();
+        return new State(activeRules, weirdRules, activeNoFormattingRuleIndex,
+                state.getNoFormattingOutputStartToken(), tableState.getColSpan(),
+                tableState.isAlignmentAtEnd());
+    }
+
+    /**
+     * Continue with a state taken from this or another Parser.
+     *
+     * @param snapshot the state to continue with
+     */
+    void restoreState(State snapshot) {
+        state.reset();
+
+        List<FormatState> formatStates = state.getFormatStates();
+        for (int ruleIndex : snapshot.activeLineContentRules) {
+            FormatState format = formatStates.get(ruleIndex);
+            format.setActive(true);
+            state.getActiveFormats().add(format);
+        }
+        for (int i = 0; i < formatStates.size(); i++) {
+            formatStates.get(i).setWeird(snapshot.weirdLineContentRules[i]);
+        }
+
+        if (snapshot.activeNoFormattingRule != State.NO_RULE) {
+            state.setActiveNoFormattingRule(
+                    noFormattingRules.get(snapshot.activeNoFormattingRule),
+                    snapshot.noFormattingOutputStartToken);
+        }
+
+        state.getTableState().setColSpan(snapshot.tableColSpan);
+        state.getTableState().setAlignmentAtEnd(snapshot.tableAlignmentAtEnd);
+    }
+
+    /**
+     * A copy of the state a Parser carries from one line to the next: the active formats in
+     * order of activation, the active no-formatting rule and the table's open cell spans. Rules
+     * are referenced by their position in the rule lists, so the state can be compared and
+     * restored across Parsers.
+     */
+    static final class State {
+        private static final int NO_RULE = -1;
+
+        private final int[] activeLineContentRules;
+        private final boolean[] weirdLineContentRules;
+        private final int activeNoFormattingRule;
+        private final String noFormattingOutputStartToken;
+        private final int tableColSpan;
+        private final boolean tableAlignmentAtEnd;
+
+        private State(int[] activeLineContentRules, boolean[] weirdLineContentRules,
+                      int activeNoFormattingRule, String noFormattingOutputStartToken,
+                      int tableColSpan, boolean tableAlignmentAtEnd) {
+            this.activeLineContentRules = activeLineContentRules;
+            this.weirdLineContentRules = weirdLineContentRules;
+            this.activeNoFormattingRule = activeNoFormattingRule;
+            this.noFormattingOutputStartToken = noFormattingOutputStartToken;
+            this.tableColSpan = tableColSpan;
+            this.tableAlignmentAtEnd = tableAlignmentAtEnd;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            State state = (State) o;
+            return activeNoFormattingRule == state.activeNoFormattingRule
+                    && tableColSpan == state.tableColSpan
+                    && tableAlignmentAtEnd == state.tableAlignmentAtEnd
+                    && Arrays.equals(activeLineContentRules, state.activeLineContentRules)
+                    && Arrays.equals(weirdLineContentRules, state.weirdLineContentRules)
+                    && Objects.equals(noFormattingOutputStartToken,
+                    state.noFormattingOutputStartToken);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Objects.hash(activeNoFormattingRule, noFormattingOutputStartToken,
+                    tableColSpan, tableAlignmentAtEnd);
+            result = 31 * result + Arrays.hashCode(activeLineContentRules);
+            result = 31 * result + Arrays.hashCode(weirdLineContentRules);
+            return result;
+        }
+    }
 }
@@ -0,0 +1,29 @@
+package net.unterwelt;
+
+/**
+ * Optional modes of the Parser.
+ */
+enum ParserOption {
+
+    /**
+     * Find the regular content between tokens with String.indexOf, which the JDK implements with
+     * vectorized intrinsics. The result is the same as with the default character by character
+     * scan.
+     */
+    VECTORIZED_SCAN,
+
+    /**
+     * Drop format tokens that cancel each other out before they are written, e.g. bold tags
+     * around an empty line or an italics tag that is closed and reopened right away. Formats are
+     * still closed at each line end, because DokuWiki doesn't recognize them across lines. The
+     * output differs from the default mode, but is displayed the same.
+     */
+    MINIMAL_MARKUP,
+
+    /**
+     * Split the content of big pages into chunks that are parsed on several threads. Each chunk
+     * is parsed on the assumption that no format is active at its start; chunks for which that
+     * turns out to be wrong are parsed again. The result is the same as with a single thread.
+     */
+    PARALLEL_PAGES
+}
@@ -0,0 +1,46 @@
+package net.unterwelt;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Parsers for short tasks on any thread, e.g. parsing a chunk of a page. A Parser is not thread
+ * safe, but all Parsers share the same stateless rules, so a released Parser can be reused by
+ * another thread instead of creating a new one.
+ */
+class ParserPool {
+
+    private final boolean addFixMe;
+    private final boolean cleanTags;
+    private final Set<ParserOption> options;
+    private final Queue<Parser> idleParsers = new ConcurrentLinkedQueue<>();
+
+    ParserPool(boolean addFixMe, boolean cleanTags, Set<ParserOption> options) {
+        this.addFixMe = addFixMe;
+        this.cleanTags = cleanTags;
+        this.options = EnumSet.copyOf(options);
+    }
+
+    /**
+     * Get an idle Parser or create a new one. The Parser must be used by the calling thread only
+     * until it is released.
+     *
+     * @return a Parser in the state of its last use; reset it before converting a new page
+     */
+    Parser acquire() {
+        Parser parser = idleParsers.poll();
+        if (parser == null) {
+            parser = new Parser(addFixMe, cleanTags, options);
+        }
+        return parser;
+    }
+
+    /**
+     * Return a Parser, so it can be acquired again.
+     *
+     * @param parser a Parser acquired from this pool
+     */
+    void release(Parser parser) {
+        idleParsers.offer(parser);
+    }
+}
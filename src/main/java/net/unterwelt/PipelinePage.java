@@ -0,0 +1,129 @@
+package net.unterwelt;
+
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * A page on its way through the PagePipeline. Each stage adds its result; a page is handled by
+ * one stage at a time, and the queues between the stages publish the results to the next stage.
+ */
+class PipelinePage {
+
+    /**
+     * Marks the end of the pages in a queue.
+     */
+    static final PipelinePage END = new PipelinePage(-1, null);
+
+    private final long sequenceNumber;
+    private final PageSource.Entry entry;
+    private final List<String> messages = new ArrayList<>();
+    private Page page;
+    private String warnings;
+    private String converted;
+    private SpooledPage spooledPage;
+    private Path outputPath;
+    private Throwable failure;
+
+    /**
+     * @param sequenceNumber the page's position in the crawl
+     * @param entry the MoinMoin page as found by the PageSource
+     */
+    PipelinePage(long sequenceNumber, PageSource.Entry entry) {
+        this.sequenceNumber = sequenceNumber;
+        this.entry = entry;
+    }
+
+    long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    PageSource.Entry getEntry() {
+        return entry;
+    }
+
+    /**
+     * Add a message for the console. Messages are printed in the order of the pages.
+     *
+     * @param message the message
+     */
+    void addMessage(String message) {
+        messages.add(message);
+    }
+
+    List<String> getMessages() {
+        return messages;
+    }
+
+    Page getPage() {
+        return page;
+    }
+
+    void setPage(Page page) {
+        this.page = page;
+    }
+
+    String getWarnings() {
+        return warnings;
+    }
+
+    void setWarnings(String warnings) {
+        this.warnings = warnings;
+    }
+
+    String getConverted() {
+        return converted;
+    }
+
+    /**
+     * Set the converted page. Once it is written, it is released with null.
+     *
+     * @param converted the converted page or null
+     */
+    void setConverted(String converted) {
+        this.converted = converted;
+    }
+
+    SpooledPage getSpooledPage() {
+        return spooledPage;
+    }
+
+    /**
+     * Set the temporary file the page was converted into instead of a String. Once it is written,
+     * it is released with null.
+     *
+     * @param spooledPage the converted page or null
+     */
+    void setSpooledPage(SpooledPage spooledPage) {
+        this.spooledPage = spooledPage;
+    }
+
+    Path getOutputPath() {
+        return outputPath;
+    }
+
+    void setOutputPath(Path outputPath) {
+        this.outputPath = outputPath;
+    }
+
+    Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Mark the page as failed. It is reported and not passed on to the next stage.
+     *
+     * @param failure the reason
+     */
+    void setFailure(Throwable failure) {
+        this.failure = failure;
+    }
+
+    /**
+     * Get a name for messages, which is available even if the page couldn't be read.
+     *
+     * @return the page's long name or its directory's name
+     */
+    String getDisplayName() {
+        return page != null ? page.getLongName("/") : entry.getDirName();
+    }
+}
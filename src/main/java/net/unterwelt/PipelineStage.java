@@ -0,0 +1,268 @@
+package net.unterwelt;
+
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * A stage of the PagePipeline. The stage takes pages from its input queue and handles them on
+ * its workers, several pages at a time. The finished pages are passed on in the order of the
+ * input, so messages are printed in the same order as without concurrency.
+ *
+ * <p>The stage only takes a new page while fewer than its maximum number of pages are pending,
+ * and passing a page on blocks while the next stage's queue is full. This way a slow stage slows
+ * down the stages before it instead of filling the memory with pages.
+ *
+ * <p>The number of workers can be changed while the stage is running, see ConcurrencyController.
+ *
+ * <p>A page whose work throws is reported as failed. An Error (e.g. an OutOfMemoryError) is
+ * fatal: the stage stops and its fatal error can be checked with getFatalError. Every stage sends
+ * END on when it stops, so the next stage doesn't wait forever.
+ */
+class PipelineStage implements Runnable {
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private final String name;
+    private final BlockingQueue<PipelinePage> input;
+    private final BlockingQueue<PipelinePage> output;
+    private final Consumer<PipelinePage> work;
+    private final Predicate<PipelinePage> finish;
+    private volatile int maxPendingPages;
+    private final ExecutorService workers;
+    private final ToLongFunction<PipelinePage> pageSize;
+
+    private final LongAdder handledPages = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+    private final LongAdder unmeasuredPages = new LongAdder();
+
+    private volatile Throwable fatalError;
+
+    /**
+     * @param name the stage's name for messages
+     * @param workers runs the work; shut down when the stage ends
+     * @param maxPendingPages the maximum number of pages handled at the same time
+     * @param input the queue of the pages to handle, ending with PipelinePage.END
+     * @param output the queue of the next stage; null for the last stage
+     * @param work handles a page on a worker; may handle several pages concurrently
+     * @param finish called for each handled page in the order of the input, on the stage's own
+     * thread; returns false if the page must not be passed on
+     */
+    PipelineStage(String name, ExecutorService workers, int maxPendingPages,
+                  BlockingQueue<PipelinePage> input, BlockingQueue<PipelinePage> output,
+                  Consumer<PipelinePage> work, Predicate<PipelinePage> finish) {
+        this(name, workers, null, maxPendingPages, input, output, work, finish);
+    }
+
+    /**
+     * Create a stage that handles the largest pending pages first. Their results are still passed
+     * on in the order of the input.
+     *
+     * @param pageSize the size of a page
+     */
+    PipelineStage(String name, LargestFirstExecutor workers,
+                  ToLongFunction<PipelinePage> pageSize, int maxPendingPages,
+                  BlockingQueue<PipelinePage> input, BlockingQueue<PipelinePage> output,
+                  Consumer<PipelinePage> work, Predicate<PipelinePage> finish) {
+        this(name, (ExecutorService) workers, pageSize, maxPendingPages, input, output, work,
+                finish);
+    }
+
+    private PipelineStage(String name, ExecutorService workers,
+                          ToLongFunction<PipelinePage> pageSize, int maxPendingPages,
+                          BlockingQueue<PipelinePage> input, BlockingQueue<PipelinePage> output,
+                          Consumer<PipelinePage> work, Predicate<PipelinePage> finish) {
+        this.name = name;
+        this.workers = workers;
+        this.pageSize = pageSize;
+        this.maxPendingPages = maxPendingPages;
+        this.input = input;
+        this.output = output;
+        this.work = work;
+        this.finish = finish;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Get the number of workers. For virtual threads this is the number of pending pages.
+     *
+     * @return the number of workers
+     */
+    int getParallelism() {
+        if (workers instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) workers).getMaximumPoolSize();
+        }
+        return maxPendingPages;
+    }
+
+    /**
+     * Change the number of workers while the stage is running.
+     *
+     * @param parallelism the new number of workers
+     * @param maxPendingPages the new maximum number of pages handled at the same time
+     */
+    void setParallelism(int parallelism, int maxPendingPages) {
+        if (workers instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) workers;
+            if (parallelism > pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(parallelism);
+                pool.setCorePoolSize(parallelism);
+            } else {
+                pool.setCorePoolSize(parallelism);
+                pool.setMaximumPoolSize(parallelism);
+            }
+        }
+        this.maxPendingPages = Math.max(maxPendingPages, 1);
+    }
+
+    /**
+     * Get the number of pages the workers have handled so far.
+     *
+     * @return the number of handled pages
+     */
+    long getHandledPages() {
+        return handledPages.sum();
+    }
+
+    /**
+     * Get the share of the workers' time they were running on a CPU since the last call, rather
+     * than waiting e.g. for the file system.
+     *
+     * @return the CPU time divided by the time spent handling pages; -1 if unknown
+     */
+    double takeCpuRatio() {
+        long busy = busyNanos.sumThenReset();
+        long cpu = cpuNanos.sumThenReset();
+        if (busy <= 0 || unmeasuredPages.sumThenReset() > 0) {
+            return -1;
+        }
+        return (double) cpu / busy;
+    }
+
+    /**
+     * Get the error that stopped the stage.
+     *
+     * @return the error or null if the stage ended normally or was interrupted
+     */
+    Throwable getFatalError() {
+        return fatalError;
+    }
+
+    @Override
+    public void run() {
+        Deque<Future<PipelinePage>> pendingPages = new ArrayDeque<>();
+        boolean ended = false;
+        try {
+            while (true) {
+                while (!pendingPages.isEmpty() && pendingPages.peek().isDone()) {
+                    finish(pendingPages.remove());
+                }
+
+                PipelinePage page = pendingPages.isEmpty() ? input.take() : input.poll();
+                if (page == null) {
+                    finish(pendingPages.remove());  // waits for the oldest page
+                } else if (page == PipelinePage.END) {
+                    while (!pendingPages.isEmpty()) {
+                        finish(pendingPages.remove());
+                    }
+                    passOn(PipelinePage.END);
+                    ended = true;
+                    return;
+                } else {
+                    pendingPages.add(submit(page));
+                    while (pendingPages.size() >= maxPendingPages) {
+                        finish(pendingPages.remove());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException | Error e) {
+            fatalError = e;
+        } finally {
+            workers.shutdownNow();
+            if (!ended && output != null) {
+                output.clear();  // the run is aborted, nobody waits for these pages
+                output.offer(PipelinePage.END);
+            }
+        }
+    }
+
+    private Future<PipelinePage> submit(PipelinePage page) {
+        Callable<PipelinePage> task = () -> handle(page);
+        if (pageSize != null) {
+            return ((LargestFirstExecutor) workers).submit(task, pageSize.applyAsLong(page));
+        }
+        return workers.submit(task);
+    }
+
+    private PipelinePage handle(PipelinePage page) {
+        long start = System.nanoTime();
+        long cpuStart = getCurrentThreadCpuTime();
+        try {
+            work.accept(page);
+        } catch (RuntimeException | Error e) {
+            page.setFailure(e);
+        }
+        long cpuEnd = getCurrentThreadCpuTime();
+        busyNanos.add(System.nanoTime() - start);
+        if (cpuStart >= 0 && cpuEnd >= 0) {
+            cpuNanos.add(cpuEnd - cpuStart);
+        } else {
+            unmeasuredPages.increment();  // e.g. on virtual threads
+        }
+        handledPages.increment();
+        return page;
+    }
+
+    private static long getCurrentThreadCpuTime() {
+        if (!THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported()) {
+            return -1;
+        }
+        return THREAD_MX_BEAN.getCurrentThreadCpuTime();
+    }
+
+    private void finish(Future<PipelinePage> pendingPage) throws InterruptedException {
+        PipelinePage page;
+        try {
+            page = pendingPage.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Stage " + name + " failed", e.getCause());
+        }
+
+        for (String message : page.getMessages()) {
+            System.out.println(message);
+        }
+        page.getMessages().clear();
+
+        boolean passOn = false;
+        if (page.getFailure() == null) {
+            try {
+                passOn = finish.test(page);
+            } catch (RuntimeException e) {
+                page.setFailure(e);
+            }
+        }
+        if (page.getFailure() != null) {
+            System.err.format("Failed (%s): %s - %s%n", name, page.getDisplayName(),
+                    page.getFailure());
+            if (page.getFailure() instanceof Error) {
+                throw (Error) page.getFailure();
+            }
+        } else if (passOn) {
+            passOn(page);
+        }
+    }
+
+    private void passOn(PipelinePage page) throws InterruptedException {
+        if (output != null) {
+            output.put(page);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package net.unterwelt;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Print the conversion's progress and current throughput at fixed intervals, e.g. to check that
+ * a throttled conversion stays within its limits.
+ */
+class ProgressReporter {
+
+    private static final double MEGABYTE = 1024 * 1024;
+
+    private final LongSupplier writtenPages;
+    private final IoThrottle ioThrottle;
+    private final long intervalMillis;
+    private ScheduledExecutorService scheduler;
+
+    private long lastTime;
+    private long lastReadBytes;
+    private long lastWrittenBytes;
+    private long lastOperations;
+
+    /**
+     * @param writtenPages the number of pages written so far
+     * @param ioThrottle counts the read and written bytes
+     * @param intervalMillis the time between two reports
+     */
+    ProgressReporter(LongSupplier writtenPages, IoThrottle ioThrottle, long intervalMillis) {
+        this.writtenPages = writtenPages;
+        this.ioThrottle = ioThrottle;
+        this.intervalMillis = intervalMillis;
+    }
+
+    void start() {
+        lastTime = System.nanoTime();
+        lastReadBytes = ioThrottle.getReadBytes();
+        lastWrittenBytes = ioThrottle.getWrittenBytes();
+        lastOperations = ioThrottle.getOperations();
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                WorkerThreads.daemonThreads("progress-reporter"));
+        scheduler.scheduleAtFixedRate(() -> System.out.println(report()), intervalMillis,
+                intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Get the throughput since the last report.
+     *
+     * @return the progress line
+     */
+    synchronized String report() {
+        long now = System.nanoTime();
+        double seconds = Math.max(now - lastTime, 1) / 1e9;
+        long readBytes = ioThrottle.getReadBytes();
+        long writtenBytes = ioThrottle.getWrittenBytes();
+        long operations = ioThrottle.getOperations();
+
+        String line = String.format(Locale.ROOT,
+                "Progress: %d pages written, reading %.1f MB/s, writing %.1f MB/s, %.0f files/s",
+                writtenPages.getAsLong(), (readBytes - lastReadBytes) / MEGABYTE / seconds,
+                (writtenBytes - lastWrittenBytes) / MEGABYTE / seconds,
+                (operations - lastOperations) / seconds);
+
+        lastTime = now;
+        lastReadBytes = readBytes;
+        lastWrittenBytes = writtenBytes;
+        lastOperations = operations;
+        return line;
+    }
+}
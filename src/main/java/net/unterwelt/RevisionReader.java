@@ -0,0 +1,274 @@
+package net.unterwelt;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Read revision files into PageContents, copying each character only once after decoding.
+ *
+ * <p>Small files are read into a pooled direct buffer, big files are mapped into memory. The
+ * bytes are decoded by a pooled CharsetDecoder straight into a pooled char array, in which the
+ * lines are indexed by their start offsets. The PageContent gets a copy of both. "\r\n" and "\r"
+ * are line breaks like in Files.readAllLines, but each line keeps a line break ("\n"), even the
+ * last one.
+ *
+ * <p>The pool keeps at most a fixed number of buffers, and only buffers of the initial size, so
+ * many reading threads or a few big pages don't keep their memory after they are done.
+ */
+class RevisionReader {
+
+    static final int DEFAULT_MAPPING_THRESHOLD = 1024 * 1024;
+    static final int DEFAULT_MAX_POOLED_BUFFERS = Runtime.getRuntime().availableProcessors();
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final Charset charset;
+    private final CodingErrorAction malformedInputAction;
+    private final int mappingThreshold;
+    private final int maxPooledBuffers;
+    private final Queue<Buffers> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledBuffers = new AtomicInteger();
+
+    /**
+     * @param malformedInputAction REPORT to fail on bytes that are not valid in the charset,
+     * REPLACE to replace them with the charset's replacement character
+     */
+    RevisionReader(Charset charset, CodingErrorAction malformedInputAction) {
+        this(charset, malformedInputAction, DEFAULT_MAPPING_THRESHOLD);
+    }
+
+    /**
+     * @param mappingThreshold files with at least this many bytes are mapped into memory
+     */
+    RevisionReader(Charset charset, CodingErrorAction malformedInputAction, int mappingThreshold) {
+        this(charset, malformedInputAction, mappingThreshold, DEFAULT_MAX_POOLED_BUFFERS);
+    }
+
+    /**
+     * @param maxPooledBuffers the number of buffers kept for reuse; more are created while more
+     * threads read at the same time, but dropped afterwards
+     */
+    RevisionReader(Charset charset, CodingErrorAction malformedInputAction, int mappingThreshold,
+                   int maxPooledBuffers) {
+        if (malformedInputAction == CodingErrorAction.IGNORE) {
+            throw new IllegalArgumentException("Malformed input has to be replaced or reported");
+        }
+        this.charset = charset;
+        this.malformedInputAction = malformedInputAction;
+        this.mappingThreshold = mappingThreshold;
+        this.maxPooledBuffers = maxPooledBuffers;
+    }
+
+    /**
+     * Read the file's lines.
+     *
+     * @param revision the revision file
+     * @return the content, each line ending with "\n"
+     * @throws CharacterCodingException if the file is not valid in the charset and malformed
+     * input is reported
+     * @throws IOException if the file can't be read
+     */
+    PageContent read(Path revision) throws IOException {
+        Buffers buffers = acquire();
+        try {
+            int length = decode(read(revision, buffers), buffers);
+            int lineCount = indexLines(buffers, length);
+            return PageContent.of(buffers.chars, buffers.lineStarts, lineCount);
+        } finally {
+            release(buffers);
+        }
+    }
+
+    /**
+     * Decode a revision's bytes, e.g. from an archive.
+     *
+     * @param revision the revision's bytes
+     * @return the content, each line ending with "\n"
+     * @throws CharacterCodingException if the bytes are not valid in the charset and malformed
+     * input is reported
+     */
+    PageContent decode(ByteBuffer revision) throws CharacterCodingException {
+        Buffers buffers = acquire();
+        try {
+            int length = decode(revision, buffers);
+            int lineCount = indexLines(buffers, length);
+            return PageContent.of(buffers.chars, buffers.lineStarts, lineCount);
+        } finally {
+            release(buffers);
+        }
+    }
+
+    /**
+     * Read the file into the buffers' direct buffer or map it.
+     */
+    private ByteBuffer read(Path revision, Buffers buffers) throws IOException {
+        try (FileChannel channel = FileChannel.open(revision, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too big: " + revision);
+            }
+
+            ByteBuffer bytes;
+            if (size >= mappingThreshold) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                bytes = buffers.getBytes((int) size);
+                while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                    // read until the buffer is full or the file ended
+                }
+                bytes.flip();
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Decode the bytes into the buffers' char array.
+     *
+     * @return the number of decoded chars
+     */
+    private static int decode(ByteBuffer bytes, Buffers buffers) throws CharacterCodingException {
+        CharsetDecoder decoder = buffers.decoder;
+        int maxChars = (int) Math.min(Integer.MAX_VALUE - 1L,
+                (long) Math.ceil(bytes.remaining() * (double) decoder.maxCharsPerByte()));
+        CharBuffer chars = CharBuffer.wrap(buffers.getChars(maxChars + 1), 0, maxChars);
+
+        decoder.reset();
+        CoderResult result = decoder.decode(bytes, chars, true);
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+        result = decoder.flush(chars);
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+        return chars.position();
+    }
+
+    /**
+     * Record the lines' start offsets and replace their line breaks with "\n".
+     *
+     * @return the number of lines; the offset after the last line is stored after their starts
+     */
+    private static int indexLines(Buffers buffers, int length) {
+        char[] text = buffers.chars;
+        int lineCount = 0;
+        int lineStart = 0;
+        int end = 0;  // after the current line's (normalized) line break
+
+        for (int i = 0; i < length; i++) {
+            char c = text[i];
+            if (c != '\n' && c != '\r') {
+                text[end++] = c;
+                continue;
+            }
+
+            text[end++] = '\n';
+            if (c == '\r' && i + 1 < length && text[i + 1] == '\n') {
+                i++;
+            }
+            buffers.addLineStart(lineCount++, lineStart);
+            lineStart = end;
+        }
+
+        if (lineStart < end) {
+            text[end++] = '\n';  // the last line had no line break; the array has room for it
+            buffers.addLineStart(lineCount++, lineStart);
+        }
+        buffers.addLineStart(lineCount, end);
+
+        return lineCount;
+    }
+
+    private Buffers acquire() {
+        Buffers buffers = pool.poll();
+        if (buffers != null) {
+            pooledBuffers.decrementAndGet();
+        } else {
+            CharsetDecoder decoder = charset.newDecoder()
+                    .onMalformedInput(malformedInputAction)
+                    .onUnmappableCharacter(malformedInputAction);
+            buffers = new Buffers(decoder);
+        }
+        return buffers;
+    }
+
+    private void release(Buffers buffers) {
+        if (pooledBuffers.incrementAndGet() > maxPooledBuffers) {
+            pooledBuffers.decrementAndGet();
+            return;
+        }
+        buffers.dropOversizedBuffers(mappingThreshold);
+        pool.offer(buffers);
+    }
+
+    /**
+     * @return the number of buffers kept for reuse
+     */
+    int getPooledBuffers() {
+        return pooledBuffers.get();
+    }
+
+    /**
+     * @return the capacity of the direct byte buffers kept for reuse
+     */
+    long getPooledDirectBytes() {
+        long directBytes = 0;
+        for (Buffers buffers : pool) {
+            directBytes += buffers.bytes.capacity();
+        }
+        return directBytes;
+    }
+
+    private static class Buffers {
+        private final CharsetDecoder decoder;
+        private ByteBuffer bytes = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+        private char[] chars = new char[INITIAL_BUFFER_SIZE];
+        private int[] lineStarts = new int[1024];
+
+        private Buffers(CharsetDecoder decoder) {
+            this.decoder = decoder;
+        }
+
+        private ByteBuffer getBytes(int size) {
+            if (bytes.capacity() < size) {
+                bytes = ByteBuffer.allocateDirect(Math.max(size, bytes.capacity() * 2));
+            }
+            bytes.clear().limit(size);
+            return bytes;
+        }
+
+        private char[] getChars(int size) {
+            if (chars.length < size) {
+                chars = new char[size];
+            }
+            return chars;
+        }
+
+        private void addLineStart(int line, int start) {
+            if (line == lineStarts.length) {
+                lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+            }
+            lineStarts[line] = start;
+        }
+
+        /**
+         * Don't keep the byte buffer of a big page nor the char array of a mapped file, so a
+         * single big page doesn't stay in memory.
+         */
+        private void dropOversizedBuffers(int maxChars) {
+            if (bytes.capacity() > INITIAL_BUFFER_SIZE) {
+                bytes = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+            }
+            if (chars.length > maxChars) {
+                chars = new char[INITIAL_BUFFER_SIZE];
+            }
+        }
+    }
+}
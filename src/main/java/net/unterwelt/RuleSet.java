@@ -0,0 +1,66 @@
+package net.unterwelt;
+
+import java.util.*;
+import net.unterwelt.rules.*;
+
+/**
+ * The rules the Parser converts with. Rules don't hold any state of a conversion, so a rule set
+ * is shared by all Parsers.
+ */
+final class RuleSet {
+
+    static final RuleSet DEFAULT = new RuleSet();
+
+    private final HeadingRule headingRule = new HeadingRule();
+
+    private final List<LineStartRule> listRules = List.of(
+            new SimpleListRule(),
+            new NumeratedListRule()
+    );
+
+    private final TableRule tableRule = new TableRule();
+
+    private final List<NoFormattingRule> noFormattingRules = List.of(
+            new HighlightingRule(),
+            new NoWikiRule()
+    );
+
+    private final LinkRule linkRule = new LinkRule();
+
+    private final List<LineContentRule> lineContentRules = List.of(
+            new BoldRule(),
+            new ItalicsRule(),
+            new MonospacedRule(),
+            new SubscriptRule(),
+            new SuperscriptRule(),
+            new StrikeThroughRule(),
+            new UnderlinedRule()
+    );
+
+    private RuleSet() {
+    }
+
+    HeadingRule getHeadingRule() {
+        return headingRule;
+    }
+
+    List<LineStartRule> getListRules() {
+        return listRules;
+    }
+
+    TableRule getTableRule() {
+        return tableRule;
+    }
+
+    List<NoFormattingRule> getNoFormattingRules() {
+        return noFormattingRules;
+    }
+
+    LinkRule getLinkRule() {
+        return linkRule;
+    }
+
+    List<LineContentRule> getLineContentRules() {
+        return lineContentRules;
+    }
+}
@@ -0,0 +1,44 @@
+package net.unterwelt;
+
+import java.io.*;
+import java.nio.file.*;
+
+/**
+ * A converted page in a temporary file of the PageSink, see PageSink.spool. The page is converted
+ * straight into the file's Writer, so a big page is never held in memory as a String.
+ */
+class SpooledPage {
+
+    private final Path file;
+    private final Writer writer;
+
+    /**
+     * @param file the temporary file
+     * @param writer writes the converted page into the file
+     */
+    SpooledPage(Path file, Writer writer) {
+        this.file = file;
+        this.writer = writer;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    Writer getWriter() {
+        return writer;
+    }
+
+    /**
+     * Delete the temporary file, e.g. because the page failed.
+     *
+     * @throws IOException if the file can't be deleted
+     */
+    void delete() throws IOException {
+        try {
+            writer.close();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package net.unterwelt;
+
+import java.util.*;
+
+/**
+ * A trie of input tokens that is compiled into a transition table when the Parser is created.
+ *
+ * <p>Each token is registered with a target (e.g. the rule handling the token). A single probe
+ * at a line's position returns the targets of all tokens found there, the longest token first.
+ * Targets of tokens with the same length are returned in the order they were added. This
+ * replaces checking every rule in list order at every character.
+ *
+ * <p>Only ASCII tokens are supported, which is sufficient for MoinMoin's markup.
+ *
+ * <p>Regular content between tokens is skipped by checking each character against a table of
+ * possible token starts. Alternatively the next token start can be found with
+ * String.indexOf(char) for each possible start character, which the JDK implements with
+ * vectorized intrinsics on common platforms. The found positions are cached for the current
+ * line, so each start character is searched once per occurrence instead of for every token.
+ * This is faster for long lines with only a few tokens, but the automaton must not be shared
+ * between threads in this mode.
+ */
+class TokenAutomaton<T> {
+
+    private static final int ALPHABET_SIZE = 128;
+    private static final int NO_STATE = -1;
+    private static final int NOT_FOUND = -1;
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private final int[][] transitions;
+    private final List<List<T>> candidates;
+    private final boolean[] isTokenStart = new boolean[ALPHABET_SIZE];
+
+    private final boolean useIndexOfScan;
+    private final char[] tokenStarts;
+    private final int[] nextOccurrences;
+    private String scannedLine = null;
+    private int lastScannedIndex = 0;
+
+    /**
+     * Compile the automaton.
+     *
+     * @param tokensAndTargets the tokens and their targets in order of priority; a token may be
+     * added several times with different targets
+     */
+    TokenAutomaton(List<Map.Entry<String, T>> tokensAndTargets) {
+        this(tokensAndTargets, false);
+    }
+
+    /**
+     * Compile the automaton.
+     *
+     * @param tokensAndTargets the tokens and their targets in order of priority; a token may be
+     * added several times with different targets
+     * @param useIndexOfScan true if token starts should be searched with String.indexOf
+     */
+    TokenAutomaton(List<Map.Entry<String, T>> tokensAndTargets, boolean useIndexOfScan) {
+        this.useIndexOfScan = useIndexOfScan;
+
+        List<int[]> trie = new ArrayList<>();
+        List<Integer> parents = new ArrayList<>();
+        List<List<T>> ownTargets = new ArrayList<>();
+        addState(trie, parents, ownTargets, NO_STATE);
+
+        for (Map.Entry<String, T> tokenAndTarget : tokensAndTargets) {
+            String token = tokenAndTarget.getKey();
+            if (token.isEmpty()) {
+                throw new IllegalArgumentException("Tokens must not be empty");
+            }
+
+            int state = 0;
+            for (int i = 0; i < token.length(); i++) {
+                char character = token.charAt(i);
+                if (character >= ALPHABET_SIZE) {
+                    throw new IllegalArgumentException("Only ASCII tokens are supported: " + token);
+                }
+                if (trie.get(state)[character] == NO_STATE) {
+                    trie.get(state)[character] = addState(trie, parents, ownTargets, state);
+                }
+                state = trie.get(state)[character];
+            }
+            ownTargets.get(state).add(tokenAndTarget.getValue());
+            isTokenStart[token.charAt(0)] = true;
+        }
+
+        transitions = trie.toArray(new int[0][]);
+        candidates = new ArrayList<>(trie.size());
+        // parents are always created before their children
+        for (int state = 0; state < trie.size(); state++) {
+            List<T> stateCandidates = new ArrayList<>(ownTargets.get(state));
+            int parent = parents.get(state);
+            if (parent != NO_STATE) {
+                stateCandidates.addAll(candidates.get(parent));  // shorter tokens after longer ones
+            }
+            candidates.add(Collections.unmodifiableList(stateCandidates));
+        }
+
+        StringBuilder distinctTokenStarts = new StringBuilder();
+        for (char character = 0; character < ALPHABET_SIZE; character++) {
+            if (isTokenStart[character]) {
+                distinctTokenStarts.append(character);
+            }
+        }
+        tokenStarts = distinctTokenStarts.toString().toCharArray();
+        nextOccurrences = new int[tokenStarts.length];
+    }
+
+    private static <T> int addState(List<int[]> trie, List<Integer> parents,
+                                    List<List<T>> ownTargets, int parent) {
+        int[] stateTransitions = new int[ALPHABET_SIZE];
+        Arrays.fill(stateTransitions, NO_STATE);
+        trie.add(stateTransitions);
+        parents.add(parent);
+        ownTargets.add(new ArrayList<>());
+        return trie.size() - 1;
+    }
+
+    /**
+     * Find the next position at which a token might start.
+     *
+     * @param line the line to search
+     * @param fromIndex the position to start the search at
+     * @return the position of the next possible token or the line's length if there is none
+     */
+    int nextTokenStart(CharSequence line, int fromIndex) {
+        if (useIndexOfScan && line instanceof String) {
+            return nextTokenStartByIndexOf((String) line, fromIndex);
+        }
+
+        for (int i = fromIndex; i < line.length(); i++) {
+            char character = line.charAt(i);
+            if (character < ALPHABET_SIZE && isTokenStart[character]) {
+                return i;
+            }
+        }
+        return line.length();
+    }
+
+    private int nextTokenStartByIndexOf(String line, int fromIndex) {
+        // cached positions are only valid while moving forward through the same line
+        if (line != scannedLine || fromIndex < lastScannedIndex) {
+            scannedLine = line;
+            Arrays.fill(nextOccurrences, UNKNOWN);
+        }
+        lastScannedIndex = fromIndex;
+
+        int nextTokenStart = line.length();
+        for (int i = 0; i < tokenStarts.length; i++) {
+            int occurrence = nextOccurrences[i];
+            if (occurrence != NOT_FOUND && occurrence < fromIndex) {
+                occurrence = line.indexOf(tokenStarts[i], fromIndex);
+                nextOccurrences[i] = occurrence;
+            }
+            if (occurrence != NOT_FOUND && occurrence < nextTokenStart) {
+                nextTokenStart = occurrence;
+            }
+        }
+        return nextTokenStart;
+    }
+
+    /**
+     * Get the targets of all tokens found at the given position.
+     *
+     * @param line the line to check
+     * @param offset the position to check
+     * @return the targets, the longest matching token's first; empty if no token matches
+     */
+    List<T> match(CharSequence line, int offset) {
+        int state = 0;
+        for (int i = offset; i < line.length(); i++) {
+            char character = line.charAt(i);
+            int next = character < ALPHABET_SIZE ? transitions[state][character] : NO_STATE;
+            if (next == NO_STATE) {
+                break;
+            }
+            state = next;
+        }
+        return candidates.get(state);
+    }
+}
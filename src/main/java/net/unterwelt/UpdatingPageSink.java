@@ -0,0 +1,157 @@
+package net.unterwelt;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Write the converted pages into a DokuWiki pages directory that may already contain them, e.g.
+ * from an earlier run. Files whose content didn't change are left alone, so their modification
+ * time stays and DokuWiki doesn't rebuild its caches for them. Changed files are replaced
+ * atomically: the new content is written to a temporary file next to the page, which is then
+ * renamed to the page's file, so DokuWiki never sees a half written page. A replaced file keeps
+ * its permissions (and, where allowed, its owner and group); a new file gets the permissions a
+ * created file gets by default.
+ */
+class UpdatingPageSink implements PageSink {
+
+    private final PageFileWriter pageFileWriter;
+    private final IoThrottle ioThrottle;
+    private final OutputDirectories outputDirectories = new OutputDirectories();
+    private final AtomicInteger writtenPages = new AtomicInteger();
+    private final AtomicInteger unchangedPages = new AtomicInteger();
+    private final AtomicInteger replacedPages = new AtomicInteger();
+
+    /**
+     * @param pageFileWriter writes the pages' files
+     */
+    UpdatingPageSink(PageFileWriter pageFileWriter) {
+        this(pageFileWriter, IoThrottle.unlimited());
+    }
+
+    /**
+     * @param pageFileWriter writes the pages' files
+     * @param ioThrottle limits the reading of existing files for the comparison
+     */
+    UpdatingPageSink(PageFileWriter pageFileWriter, IoThrottle ioThrottle) {
+        this.pageFileWriter = pageFileWriter;
+        this.ioThrottle = ioThrottle;
+    }
+
+    @Override
+    public void write(Path outputPath, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        if (!Files.exists(outputPath)) {
+            outputDirectories.create(outputPath.getParent());
+            replace(outputPath, bytes);
+            writtenPages.incrementAndGet();
+        } else if (hasContent(outputPath, bytes)) {
+            unchangedPages.incrementAndGet();
+        } else {
+            replace(outputPath, bytes);
+            replacedPages.incrementAndGet();
+        }
+    }
+
+    /**
+     * Compare the sizes first, so only files of the same size need to be read.
+     */
+    private boolean hasContent(Path file, byte[] content) throws IOException {
+        if (Files.size(file) != content.length) {
+            return false;
+        }
+        ioThrottle.read(1, content.length);
+        return Arrays.equals(Files.readAllBytes(file), content);
+    }
+
+    private void replace(Path outputPath, byte[] content) throws IOException {
+        Path tempFile = writeTempFile(outputPath, content);
+        try {
+            copyAttributes(outputPath, tempFile);
+            try {
+                Files.move(tempFile, outputPath, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, outputPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        pageFileWriter.written(outputPath);
+    }
+
+    /**
+     * Write the content into a new file next to the page. Unlike Files.createTempFile, which
+     * makes the file readable by its owner only, the file gets the default permissions, so the
+     * web server can still read the page.
+     */
+    private Path writeTempFile(Path outputPath, byte[] content) throws IOException {
+        while (true) {
+            Path tempFile = PageFileWriter.getTempFile(outputPath);
+            try {
+                pageFileWriter.write(tempFile, content, StandardOpenOption.CREATE_NEW);
+                return tempFile;
+            } catch (FileAlreadyExistsException e) {
+                // try another name
+            }
+        }
+    }
+
+    /**
+     * Give the new file the permissions, owner and group of the file it replaces. Changing the
+     * owner needs privileges the converter usually doesn't have, so owner and group are only
+     * copied where allowed.
+     */
+    private static void copyAttributes(Path outputPath, Path tempFile) throws IOException {
+        PosixFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(outputPath, PosixFileAttributes.class);
+        } catch (NoSuchFileException | UnsupportedOperationException e) {
+            return;  // a new page or no POSIX file system
+        }
+        Files.setPosixFilePermissions(tempFile, attributes.permissions());
+        PosixFileAttributeView tempView = Files.getFileAttributeView(tempFile,
+                PosixFileAttributeView.class);
+        try {
+            if (!attributes.owner().equals(Files.getOwner(tempFile))) {
+                tempView.setOwner(attributes.owner());
+            }
+            if (!attributes.group().equals(tempView.readAttributes().group())) {
+                tempView.setGroup(attributes.group());
+            }
+        } catch (FileSystemException e) {
+            // not allowed, the converter's user owns the page now
+        }
+    }
+
+    /**
+     * @return the number of pages whose file didn't exist before
+     */
+    int getWrittenPages() {
+        return writtenPages.get();
+    }
+
+    /**
+     * @return the number of pages whose file already had the same content
+     */
+    int getUnchangedPages() {
+        return unchangedPages.get();
+    }
+
+    /**
+     * @return the number of pages whose file had a different content
+     */
+    int getReplacedPages() {
+        return replacedPages.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        pageFileWriter.syncWritten();
+        System.out.format("Pages: %d written, %d unchanged, %d replaced%n", getWrittenPages(),
+                getUnchangedPages(), getReplacedPages());
+    }
+}
@@ -0,0 +1,69 @@
+package net.unterwelt;
+
+import java.lang.reflect.*;
+import java.util.concurrent.*;
+
+/**
+ * Create the executors for the pipeline's workers. Virtual threads are used if the runtime
+ * supports them (Java 21 or later); they are looked up at runtime, so the converter still runs on
+ * Java 11.
+ */
+final class WorkerThreads {
+
+    private static final String VIRTUAL_EXECUTOR_FACTORY = "newVirtualThreadPerTaskExecutor";
+
+    private WorkerThreads() {
+    }
+
+    /**
+     * Create a fixed number of daemon threads.
+     *
+     * @param name the threads' name
+     * @param threads the number of threads
+     * @return the executor
+     */
+    static ExecutorService newPlatformThreads(String name, int threads) {
+        return Executors.newFixedThreadPool(threads, daemonThreads(name));
+    }
+
+    /**
+     * Create daemon threads, so workers of a failed conversion don't keep the JVM running.
+     *
+     * @param name the threads' name
+     * @return the thread factory
+     */
+    static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    static boolean areVirtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod(VIRTUAL_EXECUTOR_FACTORY);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Create an executor that runs each task on a new virtual thread. The number of concurrent
+     * tasks must be limited by the caller.
+     *
+     * @return the executor
+     * @throws UnsupportedOperationException if the runtime has no virtual threads
+     */
+    static ExecutorService newVirtualThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod(VIRTUAL_EXECUTOR_FACTORY)
+                    .invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later", e);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Could not create virtual threads", e);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package net.unterwelt.rules;
 
+import static net.unterwelt.util.CharSequences.*;
+
 /**
  * The end tag must be in the same line as the start tag or the start tag will be displayed as
  * regular text (and the format will not be changed).
@@ -7,18 +9,18 @@ package net.unterwelt.rules;
 public abstract class EndTagInSameLineRule extends LineContentRule {
 
     @Override
-    public boolean applies(String content) {
-        if (!isActive() && content.startsWith(getInputStartToken())) {
-            String withoutStartTag = content.substring(getInputStartToken().length());
-            return withoutStartTag.contains(getInputEndToken());
-        } else if(isActive() && content.startsWith(getInputEndToken())) {
+    public boolean applies(CharSequence line, int offset, FormatState state) {
+        if (!state.isActive() && startsWith(line, offset, getInputStartToken())) {
+            int afterStartTag = offset + getInputStartToken().length();
+            return indexOf(line, getInputEndToken(), afterStartTag) >= 0;
+        } else if(state.isActive() && startsWith(line, offset, getInputEndToken())) {
             return true;
         }
         return false;
     }
 
     @Override
-    public void onActiveLineStart(StringBuilder output) {
+    public void onActiveLineStart(StringBuilder output, FormatState state) {
         throw new IllegalStateException("EndTagInSameLineRule must never be active at the start "
                 + "of a new line\noutput so far: " + output.toString());
     }
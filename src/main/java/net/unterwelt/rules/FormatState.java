@@ -0,0 +1,47 @@
+package net.unterwelt.rules;
+
+/**
+ * The state of a LineContentRule during a conversion. Rules don't hold any state themselves, so
+ * they can be shared by all Parsers.
+ */
+public class FormatState {
+
+    private final LineContentRule rule;
+    private boolean isActive = false;
+    private boolean isWeird = false;
+
+    public FormatState(LineContentRule rule) {
+        this.rule = rule;
+    }
+
+    public LineContentRule getRule() {
+        return rule;
+    }
+
+    public boolean isActive() {
+        return isActive;
+    }
+
+    public void setActive(boolean active) {
+        isActive = active;
+    }
+
+    /**
+     * Check if the format was continued from a previous line although its rule doesn't support
+     * this (see WeirdEndTagRule).
+     *
+     * @return true if the format's next end tag is not displayed
+     */
+    public boolean isWeird() {
+        return isWeird;
+    }
+
+    public void setWeird(boolean weird) {
+        isWeird = weird;
+    }
+
+    public void reset() {
+        isActive = false;
+        isWeird = false;
+    }
+}
@@ -1,77 +1,93 @@
 package net.unterwelt.rules;
 
+import static net.unterwelt.util.CharSequences.*;
+
 public class HeadingRule implements WholeLineRule {
 
+    public static final int NO_HEADING = 0;
+
     private static final int DOKUWIKI_MAX_HEADING_LEVEL = 6;
 
     @Override
     public String convert(String line) {
-        if (!line.startsWith("==") && !line.endsWith("==")) {
+        int signifierCount = getSignifierCount(line);
+        if (signifierCount == NO_HEADING) {
             return line;
         }
 
-        ValidPart startValidity = verifyStart(line);
-        if (!startValidity.isValid) {
-            return line;
+        StringBuilder heading = new StringBuilder();
+        appendHeading(heading, line, signifierCount);
+        return heading.toString();
+    }
+
+    /**
+     * Check if the line is a heading.
+     *
+     * @param line the original line
+     * @return the number of signifiers at the start and the end of the heading, or NO_HEADING if
+     * the line is no heading
+     */
+    public int getSignifierCount(CharSequence line) {
+        if (!startsWith(line, 0, "==") && !endsWith(line, "==")) {
+            return NO_HEADING;
         }
 
-        ValidPart endValidity = verifyEnd(line, startValidity.signifierCount);
-        if (!endValidity.isValid) {
-            return line;
+        int signifierCount = verifyStart(line);
+        if (signifierCount == NO_HEADING || !verifyEnd(line, signifierCount)) {
+            return NO_HEADING;
         }
 
-        return convertToHeading(line, startValidity.signifierCount);
+        return signifierCount;
     }
 
-    private ValidPart verifyStart(String line) {
+    private int verifyStart(CharSequence line) {
         int startCount = 2;
         for (int i = startCount; i <= (line.length() / 2); i++) {
-            if (!"=".equals(line.substring(i, i + 1))) {
-                if (" ".equals(line.substring(i, i + 1))) {
-                    return new ValidPart(true, i);
-                } else {
-                    return new ValidPart(false, -1);
-                }
+            char character = line.charAt(i);
+            if (character != '=') {
+                return character == ' ' ? i : NO_HEADING;
             }
         }
-        return new ValidPart(false, -1);
+        return NO_HEADING;
     }
 
-    private ValidPart verifyEnd(String line, int signifierCount) {
+    private boolean verifyEnd(CharSequence line, int signifierCount) {
         int endCount = 2;
         for (int i = endCount; i <= (line.length() / 2); i++) {
-            int index = line.length() - i - 1;
-            String character = line.substring(index, index + 1);
-            if (!"=".equals(character)) {
-                if (" ".equals(character) && signifierCount == i) {
-                    return new ValidPart(true, index);
-                } else {
-                    return new ValidPart(false, -1);
-                }
+            char character = line.charAt(line.length() - i - 1);
+            if (character != '=') {
+                return character == ' ' && signifierCount == i;
             }
         }
-        return new ValidPart(false, -1);
+        return false;
     }
 
-    private String convertToHeading(String line, int signifierCount) {
-        String content = line.substring(signifierCount + 1, line.length() - (signifierCount + 1));
-
+    /**
+     * Append the converted heading.
+     *
+     * @param output the output to append the heading to
+     * @param line the original line
+     * @param signifierCount the number of signifiers, as returned by getSignifierCount
+     */
+    public void appendHeading(StringBuilder output, CharSequence line, int signifierCount) {
         int newSignifierCount = DOKUWIKI_MAX_HEADING_LEVEL + 2 - signifierCount;
         if (newSignifierCount < 2) {
             newSignifierCount = 2;
         }
-        String signifiers = "=".repeat(newSignifierCount);
 
-        return signifiers + " " + content + " " + signifiers;
-    }
+        int contentStart = signifierCount + 1;
+        int contentEnd = line.length() - contentStart;
 
-    private static class ValidPart {
-        boolean isValid;
-        int signifierCount;
+        appendSignifiers(output, newSignifierCount);
+        output.append(' ');
+        output.append(line.subSequence(contentStart, contentEnd));
+        output.append(' ');
+        appendSignifiers(output, newSignifierCount);
+    }
 
-        private ValidPart(boolean isValid, int signifierCount) {
-            this.isValid = isValid;
-            this.signifierCount = signifierCount;
+    private static void appendSignifiers(StringBuilder output, int count) {
+        for (int i = 0; i < count; i++) {
+            output.append('=');
         }
     }
 }
@@ -1,49 +1,43 @@
 package net.unterwelt.rules;
 
-public class HighlightingRule implements NoFormattingRule {
+import static net.unterwelt.util.CharSequences.*;
 
-    private boolean isActive = false;
-    private String language;
+public class HighlightingRule implements NoFormattingRule {
 
     @Override
-    public int applies(String content) {
-        if (isActive() && isEndTag(content)) {
+    public int applies(CharSequence line, int offset, boolean isActive) {
+        if (isActive && isEndTag(line, offset)) {
             return getInputEndToken().length();
         }
 
-        if (!isActive() && content.startsWith(getInputStartTokenBase())) {
-            String contentAfterStartToken = content.substring(getInputEndToken().length());
-            String[] strings = contentAfterStartToken.split(" ");
-            if (strings.length > 1) {
-                language = strings[1];
-            } else {
-                language = "";
-            }
+        if (!isActive && startsWith(line, offset, getInputStartTokenBase())) {
+            String contentAfterStartToken = getContentAfterStartToken(line, offset);
             return getInputStartTokenBase().length() + contentAfterStartToken.length();
         }
 
         return 0;
     }
 
-    private boolean isEndTag(String content) {
-        return content.startsWith(getInputEndToken());
+    private String getContentAfterStartToken(CharSequence line, int offset) {
+        return line.subSequence(offset + getInputEndToken().length(), line.length()).toString();
     }
 
-    private String getInputStartTokenBase() {
-        return "{{{#!highlight ";
+    private boolean isEndTag(CharSequence line, int offset) {
+        return startsWith(line, offset, getInputEndToken());
     }
 
-    @Override
-    public boolean isActive() {
-        return isActive;
+    private String getInputStartTokenBase() {
+        return "{{{#!highlight ";
     }
 
+    /**
+     * Get the start token without the language (and the rest of the line).
+     *
+     * @return the start token's fixed part
+     */
     @Override
-    public void setActive(boolean active) {
-        isActive = active;
-        if (!active) {
-            language = "";
-        }
+    public String getInputStartToken() {
+        return getInputStartTokenBase();
     }
 
     @Override
@@ -51,8 +45,22 @@ public class HighlightingRule implements NoFormattingRule {
         return "}}}";
     }
 
+    /**
+     * Get the output start token with the language that follows the input start token.
+     *
+     * @param line the line that contains the input start token
+     * @param offset the position of the input start token
+     * @return the output start token
+     */
     @Override
-    public String getOutputStartToken() {
+    public String getOutputStartToken(CharSequence line, int offset) {
+        String[] strings = getContentAfterStartToken(line, offset).split(" ");
+        String language;
+        if (strings.length > 1) {
+            language = strings[1];
+        } else {
+            language = "";
+        }
         return String.format("<code %s>", language);
     }
 
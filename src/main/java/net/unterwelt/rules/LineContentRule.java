@@ -3,27 +3,29 @@ package net.unterwelt.rules;
 /**
  * Start and end tags can occur anywhere in a line's content (i.e. not only at the start) and
  * only a part of a line's content can be affected by the rule.
+ *
+ * <p>Rules don't hold any state; the state of a conversion is passed in as FormatState.
  */
 public abstract class LineContentRule {
 
-    private boolean isActive = false;
-
-    public abstract boolean applies(String content);
-
-    public boolean isActive() {
-        return isActive;
-    }
-
-    public void setActive(boolean active) {
-        isActive = active;
-    }
+    /**
+     * Check if the rule's start or end token (depending on the rule's state) is found in the line
+     * at the given offset.
+     *
+     * @param line the line that is converted
+     * @param offset the position of the first unchecked character
+     * @param state the rule's state in the current conversion
+     * @return true if the rule applies at the offset
+     */
+    public abstract boolean applies(CharSequence line, int offset, FormatState state);
 
     /**
      * Hook to execute when the rule is active at the start of a new line.
      *
      * @param output the Parser's output
+     * @param state the rule's state in the current conversion
      */
-    public abstract void onActiveLineStart(StringBuilder output);
+    public abstract void onActiveLineStart(StringBuilder output, FormatState state);
 
     public abstract String getInputStartToken();
 
@@ -32,4 +34,14 @@ public abstract class LineContentRule {
     public abstract String getOutputStartToken();
 
     public abstract String getOutputEndToken();
+
+    /**
+     * Get the output end token for the rule's current state.
+     *
+     * @param state the rule's state in the current conversion
+     * @return the output end token
+     */
+    public String getOutputEndToken(FormatState state) {
+        return getOutputEndToken();
+    }
 }
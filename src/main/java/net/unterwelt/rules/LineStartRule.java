@@ -3,18 +3,21 @@ package net.unterwelt.rules;
 public interface LineStartRule {
 
     /**
-     * Cut the rule's token from the start of the line, if present.
+     * Get the length of the rule's token at the start of the line's trimmed content.
      *
      * @param line the original line
-     * @return the trimmed or the original line
+     * @param contentStart the position of the first character that isn't whitespace
+     * @param contentEnd the position after the last character that isn't whitespace
+     * @return the token's length or zero if the content doesn't start with the rule's token
      */
-    String trimTokenIfPresent(String line);
+    int getTokenLength(CharSequence line, int contentStart, int contentEnd);
 
     /**
-     * Get the output token with indentation.
+     * Append the output token with the given indentation.
      *
-     * @return the output token (with leading and trailing spaces)
+     * @param output the output to append the token to
+     * @param indentation the number of whitespace characters before the input token
      */
-    String getOutputTokenWithIndentation();
+    void appendOutputToken(StringBuilder output, int indentation);
 
 }
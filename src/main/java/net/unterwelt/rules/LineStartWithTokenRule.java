@@ -1,43 +1,34 @@
 package net.unterwelt.rules;
 
+import static net.unterwelt.util.CharSequences.*;
+
 import java.util.*;
 
 public abstract class LineStartWithTokenRule implements LineStartRule {
 
     private final List<String> listPrefixes;
-    private int indentation = 0;
 
     LineStartWithTokenRule(List<String> listPrefixes) {
         this.listPrefixes = listPrefixes;
     }
 
     @Override
-    public String trimTokenIfPresent(String line) {
-        if (!line.startsWith(" ")) {
-            return line;
-        }
-
-        final String trimmedLine = line.trim();
-        indentation = 0;
-        String contentWithoutPrefix = "";
+    public int getTokenLength(CharSequence line, int contentStart, int contentEnd) {
         for (String prefix : listPrefixes) {
-            if (trimmedLine.startsWith(prefix)) {
-                indentation = line.indexOf(prefix);
-                contentWithoutPrefix = trimmedLine.substring(prefix.length());
-                break;
+            if (contentStart + prefix.length() <= contentEnd
+                    && startsWith(line, contentStart, prefix)) {
+                return prefix.length();
             }
         }
-
-        if (indentation > 0) {
-            return contentWithoutPrefix;
-        } else {
-            return line;
-        }
+        return 0;
     }
 
     @Override
-    public String getOutputTokenWithIndentation() {
-        return "  ".repeat(indentation) + getOutputToken();
+    public void appendOutputToken(StringBuilder output, int indentation) {
+        for (int i = 0; i < indentation; i++) {
+            output.append("  ");
+        }
+        output.append(getOutputToken());
     }
 
     /**
@@ -1,5 +1,7 @@
 package net.unterwelt.rules;
 
+import static net.unterwelt.util.CharSequences.*;
+
 public class LinkRule {
 
     private static final String START_TOKEN = "[[";
@@ -15,19 +17,30 @@ public class LinkRule {
     private static final String[] INVALID_CHARACTERS = {":", "?"};
     private static final String REPLACEMENT = "_";
 
-    public LinkRuleResult convert(String original, String pageName) {
+    private static final LinkRuleResult NO_LINK = new LinkRuleResult(0, null);
+
+    /**
+     * Convert the link starting at the given offset.
+     *
+     * @param line the line that is converted
+     * @param offset the position of the first unchecked character
+     * @param pageName the name of the page that contains the link
+     * @return the result; processedCharacters is zero if there is no link at the offset
+     */
+    public LinkRuleResult convert(CharSequence line, int offset, String pageName) {
         // start token not found
-        if (!applies(original)) {
-            return new LinkRuleResult(0, null);
+        if (!applies(line, offset)) {
+            return NO_LINK;
         }
 
         // end token not found
-        int endIndex = original.indexOf(END_TOKEN);
-        if (endIndex == -1) {
-            return new LinkRuleResult(0, null);
+        int endTokenIndex = indexOf(line, END_TOKEN, offset);
+        if (endTokenIndex == -1) {
+            return NO_LINK;
         }
 
-        String link = original.substring(START_TOKEN.length(), endIndex);
+        String link = line.subSequence(offset + START_TOKEN.length(), endTokenIndex).toString();
+        int endIndex = endTokenIndex - offset;
         // http(s)-link -> keep link as it is
         if (link.startsWith(HTTP_TOKEN) || link.startsWith(HTTPS_TOKEN)) {
             return createResult(endIndex, link);
@@ -51,8 +64,12 @@ public class LinkRule {
         return createResult(endIndex, link);
     }
 
-    private boolean applies(String uncheckedLinePart) {
-        return uncheckedLinePart.startsWith("[[");
+    public String getInputStartToken() {
+        return START_TOKEN;
+    }
+
+    private boolean applies(CharSequence line, int offset) {
+        return startsWith(line, offset, START_TOKEN);
     }
 
     private LinkRuleResult createResult(int endIndex, String link) {
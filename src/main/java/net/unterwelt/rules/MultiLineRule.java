@@ -1,5 +1,7 @@
 package net.unterwelt.rules;
 
+import static net.unterwelt.util.CharSequences.*;
+
 /**
  * End tag can be on another line and all the rule will apply to all text between start and end tag
  */
@@ -7,17 +9,17 @@ public abstract class MultiLineRule extends LineContentRule {
 
     @Override
     @SuppressWarnings("RedundantIfStatement")
-    public boolean applies(String content) {
-        if (isActive() && content.startsWith(getInputEndToken())) {
+    public boolean applies(CharSequence line, int offset, FormatState state) {
+        if (state.isActive() && startsWith(line, offset, getInputEndToken())) {
             return true;
-        } else if (!isActive() && content.startsWith(getInputStartToken())) {
+        } else if (!state.isActive() && startsWith(line, offset, getInputStartToken())) {
             return true;
         }
         return false;
     }
 
     @Override
-    public void onActiveLineStart(StringBuilder output) {
+    public void onActiveLineStart(StringBuilder output, FormatState state) {
         output.append(getOutputStartToken());
     }
 }
@@ -2,15 +2,29 @@ package net.unterwelt.rules;
 
 public interface NoFormattingRule {
 
-    int applies(String content);
-
-    boolean isActive();
-
-    void setActive(boolean active);
+    /**
+     * Check if the rule's start or end token (depending on the rule's state) is found in the line
+     * at the given offset.
+     *
+     * @param line the line that is converted
+     * @param offset the position of the first unchecked character
+     * @param isActive true if the rule is active in the current conversion
+     * @return the number of processed characters or 0 if the rule doesn't apply
+     */
+    int applies(CharSequence line, int offset, boolean isActive);
+
+    String getInputStartToken();
 
     String getInputEndToken();
 
-    String getOutputStartToken();
+    /**
+     * Get the output start token for the input start token found at the given offset.
+     *
+     * @param line the line that contains the input start token
+     * @param offset the position of the input start token
+     * @return the output start token
+     */
+    String getOutputStartToken(CharSequence line, int offset);
 
     String getOutputEndToken();
 
@@ -1,5 +1,7 @@
 package net.unterwelt.rules;
 
+import static net.unterwelt.util.CharSequences.*;
+
 /**
  * Transforms generic code-formatting form MoinMoin into Dokuwiki's nowiki-format.
  *
@@ -28,20 +30,18 @@ package net.unterwelt.rules;
  */
 public class NoWikiRule implements NoFormattingRule {
 
-    private boolean isActive = false;
-
     @Override
-    public int applies(String content) {
-        if (isActive() && isEndTag(content)) {
+    public int applies(CharSequence line, int offset, boolean isActive) {
+        if (isActive && isEndTag(line, offset)) {
             return getInputEndToken().length();
         }
 
-        if (!isActive() && content.startsWith(getInputStartToken())) {
-            String restOfLine = content.substring(getInputStartToken().length());
-            if (isMultiLineStart(restOfLine)) {
+        if (!isActive && startsWith(line, offset, getInputStartToken())) {
+            int restOfLine = offset + getInputStartToken().length();
+            if (isMultiLineStart(line, restOfLine)) {
                 return getInputStartToken().length();
             }
-            if (hasEndTagInSameLine(restOfLine)) {
+            if (hasEndTagInSameLine(line, restOfLine)) {
                 return getInputStartToken().length();
             }
         }
@@ -49,30 +49,26 @@ public class NoWikiRule implements NoFormattingRule {
         return 0;
     }
 
-    private boolean isEndTag(String content) {
-        return content.startsWith(getInputEndToken());
+    private boolean isEndTag(CharSequence line, int offset) {
+        return startsWith(line, offset, getInputEndToken());
     }
 
-    private String getInputStartToken() {
+    @Override
+    public String getInputStartToken() {
         return "{{{";
     }
 
-    private boolean isMultiLineStart(String restOfLine) {
-        return restOfLine.trim().length() == 0;
-    }
-
-    private boolean hasEndTagInSameLine(String restOfLine) {
-        return restOfLine.contains(getInputEndToken());
-    }
-
-    @Override
-    public boolean isActive() {
-        return isActive;
+    private boolean isMultiLineStart(CharSequence line, int restOfLine) {
+        for (int i = restOfLine; i < line.length(); i++) {
+            if (line.charAt(i) > ' ') {  // same as String.trim()
+                return false;
+            }
+        }
+        return true;
     }
 
-    @Override
-    public void setActive(boolean active) {
-        isActive = active;
+    private boolean hasEndTagInSameLine(CharSequence line, int restOfLine) {
+        return indexOf(line, getInputEndToken(), restOfLine) >= 0;
     }
 
     @Override
@@ -81,7 +77,7 @@ public class NoWikiRule implements NoFormattingRule {
     }
 
     @Override
-    public String getOutputStartToken() {
+    public String getOutputStartToken(CharSequence line, int offset) {
         return "<nowiki>";
     }
 
@@ -1,5 +1,7 @@
 package net.unterwelt.rules;
 
+import static net.unterwelt.util.CharSequences.*;
+
 public class TableRule {
 
     private static final String MOINMOIN_SEPARATOR = "||";
@@ -7,89 +9,94 @@ public class TableRule {
     private static final String ALIGN_RIGHT = "<style=\"text-align: right;\">";
     private static final String ALIGN_CENTER = "<style=\"text-align: center;\">";
 
+    private static final TableRuleResult NO_SEPARATOR = new TableRuleResult(0, "");
 
-    boolean isActive = false;
-    int colSpan = 0;
-    boolean alignmentAtEnd = false;
 
-    public TableRuleResult convert(String linePart) {
-        if (!isActive) {
-            return new TableRuleResult(0, "");
+    /**
+     * Convert the cell separators starting at the given offset.
+     *
+     * @param line the line that is converted
+     * @param offset the position of the first unchecked character
+     * @param state the table's state in the current conversion
+     * @return the result; processedCharacters is zero if there is no separator at the offset
+     */
+    public TableRuleResult convert(CharSequence line, int offset, TableState state) {
+        if (!state.isRowActive()) {
+            return NO_SEPARATOR;
         }
-        if (!linePart.startsWith("||")) {
-            return new TableRuleResult(0, "");
+        if (!startsWith(line, offset, MOINMOIN_SEPARATOR)) {
+            return NO_SEPARATOR;
         }
         StringBuilder result = new StringBuilder();
 
-        if (alignmentAtEnd) {
+        if (state.isAlignmentAtEnd()) {
             result.append("  ");
-            alignmentAtEnd = false;
+            state.setAlignmentAtEnd(false);
         }
 
-        closeExistingColSpans(result);
+        closeExistingColSpans(result, state);
 
-        int processedCharacters = parseNewColSpans(linePart);
+        int processedCharacters = parseNewColSpans(line, offset, state);
 
-        processedCharacters += parseAlignment(result, linePart, processedCharacters);
+        processedCharacters += parseAlignment(result, line, offset + processedCharacters, state);
 
         return new TableRuleResult(processedCharacters, result.toString());
     }
 
-    private int parseAlignment(StringBuilder result, String linePart, int processedCharacters) {
-        String withoutLeadingSeparators = linePart.substring(processedCharacters);
-
-        if (withoutLeadingSeparators.startsWith(ALIGN_RIGHT)) {
+    private int parseAlignment(StringBuilder result, CharSequence line, int offset,
+                               TableState state) {
+        if (startsWith(line, offset, ALIGN_RIGHT)) {
             result.append("  ");
             return ALIGN_RIGHT.length();
-        } else if (withoutLeadingSeparators.startsWith(ALIGN_CENTER)) {
+        } else if (startsWith(line, offset, ALIGN_CENTER)) {
             result.append("  ");
-            alignmentAtEnd = true;
+            state.setAlignmentAtEnd(true);
             return ALIGN_CENTER.length();
-        } else if (withoutLeadingSeparators.startsWith(ALIGN_LEFT)) {
-            alignmentAtEnd = true;
+        } else if (startsWith(line, offset, ALIGN_LEFT)) {
+            state.setAlignmentAtEnd(true);
             return ALIGN_LEFT.length();
         }
 
         return 0;
     }
 
-    private StringBuilder closeExistingColSpans(StringBuilder result) {
+    private StringBuilder closeExistingColSpans(StringBuilder result, TableState state) {
         result.append("|");
-        while (colSpan > 0) {
-            colSpan--;
+        while (state.getColSpan() > 0) {
+            state.setColSpan(state.getColSpan() - 1);
             result.append("|");
         }
         return result;
     }
 
-    private int parseNewColSpans(String linePart) {
-        int processedCharacters = handleImplicitColSpans(linePart);
-        processedCharacters += handleExplicitColSpans(linePart, processedCharacters);
+    private int parseNewColSpans(CharSequence line, int offset, TableState state) {
+        int processedCharacters = handleImplicitColSpans(line, offset, state);
+        processedCharacters += handleExplicitColSpans(line, offset + processedCharacters, state);
 
         return processedCharacters;
     }
 
-    private int handleImplicitColSpans(String linePart) {
+    private int handleImplicitColSpans(CharSequence line, int offset, TableState state) {
         int separatorCount = 1;
-        while (linePart.substring(separatorCount * MOINMOIN_SEPARATOR.length()).startsWith(MOINMOIN_SEPARATOR)) {
-            colSpan++;
+        while (startsWith(line, offset + separatorCount * MOINMOIN_SEPARATOR.length(),
+                MOINMOIN_SEPARATOR)) {
+            state.setColSpan(state.getColSpan() + 1);
             separatorCount++;
         }
         return separatorCount * MOINMOIN_SEPARATOR.length();
     }
 
-    private int handleExplicitColSpans(String linePart, int processedCharacters) {
-        String withoutLeadingSeparators = linePart.substring(processedCharacters);
+    private int handleExplicitColSpans(CharSequence line, int offset, TableState state) {
         int tagLength = 0;
 
-        if (withoutLeadingSeparators.startsWith("<-")) {
-            int colSpanEndTag = withoutLeadingSeparators.indexOf(">");
+        if (startsWith(line, offset, "<-")) {
+            int colSpanEndTag = indexOf(line, ">", offset);
             if (colSpanEndTag >= 0) {
                 try {
-                    int additionalSpan = Integer.parseInt(withoutLeadingSeparators.substring(2,
-                            colSpanEndTag));
-                    this.colSpan += additionalSpan - 1;  // adjust for default colSpan (1)
-                    tagLength = colSpanEndTag + 1;
+                    int additionalSpan = Integer.parseInt(line, offset + 2, colSpanEndTag, 10);
+                    // adjust for default colSpan (1)
+                    state.setColSpan(state.getColSpan() + additionalSpan - 1);
+                    tagLength = colSpanEndTag + 1 - offset;
                 } catch (NumberFormatException e) {
                     // not an integer; ergo no colSpan increase
                 }
@@ -99,10 +106,19 @@ public class TableRule {
         return tagLength;
     }
 
-    public void checkActivation(String line) {
-        isActive = line.startsWith(MOINMOIN_SEPARATOR) && line.endsWith(MOINMOIN_SEPARATOR);
+    public String getInputSeparator() {
+        return MOINMOIN_SEPARATOR;
     }
 
+    /**
+     * Check if the line is a table row. The line must not be trimmed.
+     *
+     * @param line the original line
+     * @return true if the line starts and ends with a cell separator
+     */
+    public boolean isTableRow(CharSequence line) {
+        return startsWith(line, 0, MOINMOIN_SEPARATOR) && endsWith(line, MOINMOIN_SEPARATOR);
+    }
 
     public static class TableRuleResult {
         public final int processedCharacters;
@@ -0,0 +1,52 @@
+package net.unterwelt.rules;
+
+/**
+ * The state of the TableRule during a conversion.
+ */
+public class TableState {
+
+    private boolean isRowActive = false;
+    private int colSpan = 0;
+    private boolean alignmentAtEnd = false;
+
+    /**
+     * Check if the current line is a table row, i.e. if cell separators are converted.
+     *
+     * @return true if the line is a table row
+     */
+    public boolean isRowActive() {
+        return isRowActive;
+    }
+
+    public void setRowActive(boolean rowActive) {
+        isRowActive = rowActive;
+    }
+
+    /**
+     * Get the number of additional cells the current cell spans, which are closed with the next
+     * separator.
+     *
+     * @return the number of additional cells
+     */
+    public int getColSpan() {
+        return colSpan;
+    }
+
+    public void setColSpan(int colSpan) {
+        this.colSpan = colSpan;
+    }
+
+    public boolean isAlignmentAtEnd() {
+        return alignmentAtEnd;
+    }
+
+    public void setAlignmentAtEnd(boolean alignmentAtEnd) {
+        this.alignmentAtEnd = alignmentAtEnd;
+    }
+
+    public void reset() {
+        isRowActive = false;
+        colSpan = 0;
+        alignmentAtEnd = false;
+    }
+}
@@ -1,5 +1,7 @@
 package net.unterwelt.rules;
 
+import static net.unterwelt.util.CharSequences.*;
+
 /**
  * If the end tag is on the same line as the start tag, the rule behaves like
  * EndTagInSameLineRule. If the end tag is not in the same line as the start tag, the rule will
@@ -8,21 +10,19 @@ package net.unterwelt.rules;
  */
 public abstract class WeirdEndTagRule extends LineContentRule {
 
-    boolean isWeird = false;
-
     @Override
-    public boolean applies(String content) {
-        if (!isActive() && content.startsWith(getInputStartToken())) {
-            isWeird = false;
+    public boolean applies(CharSequence line, int offset, FormatState state) {
+        if (!state.isActive() && startsWith(line, offset, getInputStartToken())) {
+            state.setWeird(false);
             return true;
         }
 
-        if (isActive() && content.startsWith(getInputEndToken())) {
+        if (state.isActive() && startsWith(line, offset, getInputEndToken())) {
             return true;
         }
 
-        if (isWeird && content.startsWith(getInputEndToken())) {
-            isWeird = false;
+        if (state.isWeird() && startsWith(line, offset, getInputEndToken())) {
+            state.setWeird(false);
             return true;
         }
 
@@ -30,15 +30,20 @@ public abstract class WeirdEndTagRule extends LineContentRule {
     }
 
     @Override
-    public void onActiveLineStart(StringBuilder output) {
-        if (isActive()) {
-            isWeird = true;
+    public void onActiveLineStart(StringBuilder output, FormatState state) {
+        if (state.isActive()) {
+            state.setWeird(true);
         }
     }
 
     @Override
     public String getOutputEndToken() {
-        if (isWeird) {
+        return getDefinedOutputEndToken();
+    }
+
+    @Override
+    public String getOutputEndToken(FormatState state) {
+        if (state.isWeird()) {
             return "";
         }
         return getDefinedOutputEndToken();
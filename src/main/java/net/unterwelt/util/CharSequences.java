@@ -0,0 +1,69 @@
+package net.unterwelt.util;
+
+/**
+ * Offset based helpers for CharSequences, so a line can be checked at any position without
+ * creating substrings.
+ */
+public final class CharSequences {
+
+    private CharSequences() {
+    }
+
+    /**
+     * Check if the token is found in the sequence at the given offset.
+     *
+     * @param sequence the sequence to check
+     * @param offset the position in the sequence where the token has to start
+     * @param token the token to look for
+     * @return true if the token starts at the offset
+     */
+    public static boolean startsWith(CharSequence sequence, int offset, String token) {
+        if (sequence instanceof String) {
+            return ((String) sequence).startsWith(token, offset);
+        }
+
+        int length = token.length();
+        if (offset < 0 || offset > sequence.length() - length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (sequence.charAt(offset + i) != token.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the sequence ends with the token.
+     *
+     * @param sequence the sequence to check
+     * @param token the token to look for
+     * @return true if the token is found at the end of the sequence
+     */
+    public static boolean endsWith(CharSequence sequence, String token) {
+        return startsWith(sequence, sequence.length() - token.length(), token);
+    }
+
+    /**
+     * Find the first occurrence of the token at or after the given offset.
+     *
+     * @param sequence the sequence to search
+     * @param token the token to look for
+     * @param fromIndex the position to start the search at
+     * @return the index of the token's first character or -1 if the token was not found
+     */
+    public static int indexOf(CharSequence sequence, String token, int fromIndex) {
+        if (sequence instanceof String) {
+            return ((String) sequence).indexOf(token, fromIndex);
+        }
+
+        int lastStart = sequence.length() - token.length();
+        for (int i = Math.max(fromIndex, 0); i <= lastStart; i++) {
+            if (startsWith(sequence, i, token)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
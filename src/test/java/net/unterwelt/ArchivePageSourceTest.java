@@ -0,0 +1,230 @@
+package net.unterwelt;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+import java.util.zip.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.*;
+import org.junit.jupiter.params.provider.*;
+
+class ArchivePageSourceTest {
+
+    private static final Path testDir = Paths.get("testDirForArchive");
+    private static final Path pathToMoinMoinPages = testDir.resolve(
+            Paths.get("MoinMoin", "wiki", "data", "pages"));
+
+    @BeforeEach
+    void setUp() {
+        deleteTestDir();
+    }
+
+    @AfterEach
+    void tearDown() {
+        deleteTestDir();
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private void deleteTestDir() {
+        try {
+            Files.walk(testDir)
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        } catch (NoSuchFileException e) {
+            // ignore
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"pages.zip", "pages.tar", "pages.tar.gz"})
+    void testSamePagesAsCrawler(String archiveName) throws IOException, InterruptedException {
+        // given
+        PageDirBuilder.create(pathToMoinMoinPages, "basic_page").build();
+        PageDirBuilder.create(pathToMoinMoinPages, "revision_page").withRevisionNumber(3)
+                .withContent("current line A\ncurrent line B").build();
+        PageDirBuilder.create(pathToMoinMoinPages, "sub_page").withSuperPages("super_page").build();
+        PageDirBuilder.create(pathToMoinMoinPages, "Long(20)name" + "(20)x".repeat(40)).build();
+        PageDirBuilder.create(pathToMoinMoinPages, "deleted_page").build();
+        Files.delete(pathToMoinMoinPages.resolve(Paths.get("deleted_page", "revisions",
+                "00000001")));
+        Path archive = testDir.resolve(archiveName);
+        writeArchive(archive, testDir.resolve("MoinMoin"));
+
+        // when
+        List<Page> archivePages = new ArrayList<>();
+        List<String> messages = new ArrayList<>();
+        new ArchivePageSource(archive, StandardCharsets.UTF_8, CodingErrorAction.REPORT)
+                .findPages(entry -> {
+                    Page page = entry.read(messages::add);
+                    if (page != null) {
+                        archivePages.add(page);
+                    }
+                });
+
+        // then
+        List<Page> crawledPages = new MoinMoinPagesCrawler(pathToMoinMoinPages,
+                StandardCharsets.UTF_8).crawl();
+        assertThat(archivePages).hasSize(4);
+        for (Page crawledPage : crawledPages) {
+            Page archivePage = archivePages.stream()
+                    .filter(page -> page.getLongName("/").equals(crawledPage.getLongName("/")))
+                    .findFirst().orElseThrow();
+            assertThat(archivePage.getContent()).isEqualTo(crawledPage.getContent());
+        }
+        assertThat(messages).filteredOn(message -> message.contains("NOT FOUND")).hasSize(1);
+    }
+
+    /**
+     * Archives list the files of a directory in any order, so the current revision may come
+     * before or after the file 'current'.
+     */
+    @Test
+    void testRevisionsBeforeCurrent() throws IOException, InterruptedException {
+        // given
+        Path archive = testDir.resolve("pages.zip");
+        Files.createDirectories(testDir);
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive))) {
+            addZipEntry(out, "pages/page/revisions/00000001", "old\n");
+            addZipEntry(out, "pages/page/revisions/00000002", "new\n");
+            addZipEntry(out, "pages/page/current", "00000002\n");
+            addZipEntry(out, "pages/page/edit-log", "log\n");
+            addZipEntry(out, "pages/other/current", "00000001\n");
+            addZipEntry(out, "pages/other/revisions/00000001", "other\n");
+        }
+
+        // when
+        List<Page> pages = new ArrayList<>();
+        new ArchivePageSource(archive, StandardCharsets.UTF_8, CodingErrorAction.REPORT)
+                .findPages(entry -> pages.add(entry.read(message -> { })));
+
+        // then
+        assertThat(pages).extracting(Page::getName).containsExactly("page", "other");
+        assertThat(pages.get(0).getContent()).containsExactly("new\n");
+        assertThat(pages.get(1).getContent()).containsExactly("other\n");
+    }
+
+    /**
+     * Files named like a page's files below a page directory, e.g. attachments, must neither
+     * become pages nor end the page they are in.
+     */
+    @Test
+    void testIgnoresNestedFilesNamedLikePageFiles() throws IOException, InterruptedException {
+        // given
+        Path archive = testDir.resolve("pages.zip");
+        Files.createDirectories(testDir);
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive))) {
+            addZipEntry(out, "wiki/data/pages/page/current", "00000001\n");
+            addZipEntry(out, "wiki/data/pages/page/attachments/current", "attachment\n");
+            addZipEntry(out, "wiki/data/pages/page/cache/revisions/00000001", "cache\n");
+            addZipEntry(out, "wiki/data/pages/page/revisions/00000001", "page\n");
+            addZipEntry(out, "wiki/data/pages/other/current", "00000001\n");
+            addZipEntry(out, "wiki/data/pages/other/revisions/00000001", "other\n");
+            addZipEntry(out, "wiki/data/backup/pages/old/current", "00000001\n");
+            addZipEntry(out, "wiki/data/backup/pages/old/revisions/00000001", "old\n");
+        }
+
+        // when
+        List<Page> pages = new ArrayList<>();
+        new ArchivePageSource(archive, StandardCharsets.UTF_8, CodingErrorAction.REPORT)
+                .findPages(entry -> pages.add(entry.read(message -> { })));
+
+        // then
+        assertThat(pages).extracting(Page::getName).containsExactly("page", "other");
+        assertThat(pages.get(0).getContent()).containsExactly("page\n");
+        assertThat(pages.get(1).getContent()).containsExactly("other\n");
+    }
+
+    @Test
+    void testCountsOneOperationPerReadEntry() throws IOException, InterruptedException {
+        // given
+        Path archive = testDir.resolve("pages.zip");
+        Files.createDirectories(testDir);
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive))) {
+            addZipEntry(out, "pages/page/current", "00000001\n");
+            addZipEntry(out, "pages/page/revisions/00000001", "current\n");
+            addZipEntry(out, "pages/page/revisions/00000002", "not current\n");
+            addZipEntry(out, "pages/page/edit-log", "log\n");
+            addZipEntry(out, "pages/other/current", "00000001\n");
+            addZipEntry(out, "pages/other/revisions/00000001", "other\n");
+        }
+        IoThrottle ioThrottle = IoThrottle.unlimited();
+
+        // when
+        new ArchivePageSource(archive, StandardCharsets.UTF_8, CodingErrorAction.REPORT,
+                ioThrottle).findPages(entry -> entry.read(message -> { }));
+
+        // then
+        assertThat(ioThrottle.getOperations()).isEqualTo(4);
+        assertThat(ioThrottle.getReadBytes()).isEqualTo(Files.size(archive));
+    }
+
+    private static void writeArchive(Path archive, Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.filter(Files::isRegularFile).sorted().forEach(files::add);
+        }
+
+        String name = archive.getFileName().toString();
+        try (OutputStream out = Files.newOutputStream(archive)) {
+            if (name.endsWith(".zip")) {
+                try (ZipOutputStream zip = new ZipOutputStream(out)) {
+                    for (Path file : files) {
+                        addZipEntry(zip, toEntryName(dir, file), Files.readString(file));
+                    }
+                }
+            } else if (name.endsWith(".tar.gz")) {
+                try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                    writeTar(gzip, dir, files);
+                }
+            } else {
+                writeTar(out, dir, files);
+            }
+        }
+    }
+
+    private static void addZipEntry(ZipOutputStream zip, String name, String content)
+            throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    /**
+     * Write a tar archive like GNU tar: names longer than 100 bytes get an extra entry.
+     */
+    private static void writeTar(OutputStream out, Path dir, List<Path> files)
+            throws IOException {
+        for (Path file : files) {
+            byte[] name = toEntryName(dir, file).getBytes(StandardCharsets.UTF_8);
+            if (name.length > 100) {
+                writeTarEntry(out, "././@LongLink".getBytes(StandardCharsets.US_ASCII), 'L', name);
+                name = Arrays.copyOf(name, 100);
+            }
+            writeTarEntry(out, name, '0', Files.readAllBytes(file));
+        }
+        out.write(new byte[1024]);
+    }
+
+    private static void writeTarEntry(OutputStream out, byte[] name, char type, byte[] content)
+            throws IOException {
+        byte[] header = new byte[512];
+        System.arraycopy(name, 0, header, 0, name.length);
+        byte[] size = String.format("%011o", content.length).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(size, 0, header, 124, size.length);
+        header[156] = (byte) type;
+        out.write(header);
+        out.write(content);
+        out.write(new byte[(512 - content.length % 512) % 512]);
+    }
+
+    private static String toEntryName(Path dir, Path file) {
+        return dir.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+}
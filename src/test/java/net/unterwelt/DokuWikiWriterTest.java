@@ -189,4 +189,4 @@ class DokuWikiWriterTest {
         assertThat(content2.get(0)).isEqualTo("line A");
         assertThat(content2.get(1)).isEqualTo("line b");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,115 @@
+package net.unterwelt;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.*;
+
+class IoThrottleTest {
+
+    @Test
+    void testUnlimitedOnlyCounts() throws IOException {
+        // given
+        IoThrottle ioThrottle = IoThrottle.unlimited();
+
+        // when
+        long start = System.nanoTime();
+        ioThrottle.read(1, 1L << 40);
+        ioThrottle.write(2, 1L << 40);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // then
+        assertThat(ioThrottle.isLimited()).isFalse();
+        assertThat(millis).isLessThan(1000);
+        assertThat(ioThrottle.getReadBytes()).isEqualTo(1L << 40);
+        assertThat(ioThrottle.getWrittenBytes()).isEqualTo(1L << 40);
+        assertThat(ioThrottle.getOperations()).isEqualTo(3);
+    }
+
+    /**
+     * The first second's worth is the burst, the rest has to wait for the rate, also when several
+     * threads share the throttle.
+     */
+    @Test
+    void testReadRateSharedByThreads() throws Exception {
+        // given
+        IoThrottle ioThrottle = new IoThrottle(100_000, 0, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+
+        // when
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> reads = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                reads.add(executor.submit(() -> {
+                    ioThrottle.read(1, 10_000);
+                    return null;
+                }));
+            }
+            for (Future<?> read : reads) {
+                read.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // then
+        assertThat(millis).isBetween(1800L, 5000L);
+        assertThat(ioThrottle.getReadBytes()).isEqualTo(300_000);
+    }
+
+    @Test
+    void testFileRate() throws IOException {
+        // given
+        IoThrottle ioThrottle = new IoThrottle(0, 0, 20);
+
+        // when
+        long start = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            ioThrottle.write(1, 100);
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // then
+        assertThat(millis).isBetween(1400L, 4000L);
+    }
+
+    @Test
+    void testThrottledStreams() throws IOException {
+        // given
+        IoThrottle ioThrottle = IoThrottle.unlimited();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        // when
+        try (OutputStream out = ioThrottle.throttle(bytes)) {
+            out.write(new byte[1000]);
+            out.write(1);
+        }
+        try (InputStream in = ioThrottle.throttle(new ByteArrayInputStream(bytes.toByteArray()))) {
+            in.readAllBytes();
+        }
+
+        // then
+        assertThat(bytes.size()).isEqualTo(1001);
+        assertThat(ioThrottle.getWrittenBytes()).isEqualTo(1001);
+        assertThat(ioThrottle.getReadBytes()).isEqualTo(1001);
+        assertThat(ioThrottle.getOperations()).isZero();
+    }
+
+    @Test
+    void testInterruptedWhileWaiting() {
+        // given
+        IoThrottle ioThrottle = new IoThrottle(1, 0, 0);
+        Thread.currentThread().interrupt();
+
+        // when
+        Throwable thrown = catchThrowable(() -> ioThrottle.read(1, 1000));
+
+        // then
+        assertThat(thrown).isInstanceOf(InterruptedIOException.class);
+        assertThat(Thread.interrupted()).isTrue();
+    }
+}
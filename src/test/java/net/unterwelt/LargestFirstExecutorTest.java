@@ -0,0 +1,38 @@
+package net.unterwelt;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.*;
+
+class LargestFirstExecutorTest {
+
+    @Test
+    void testLargestTaskFirst() throws Exception {
+        // given
+        LargestFirstExecutor executor = new LargestFirstExecutor("test", 1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        executor.submit(() -> {
+            blocked.await();
+            return null;
+        }, 0);
+
+        // when
+        List<Future<?>> futures = new ArrayList<>();
+        futures.add(executor.submit(() -> executed.add("unsized")));
+        futures.add(executor.submit(() -> executed.add("small"), 1));
+        futures.add(executor.submit(() -> executed.add("big"), 5));
+        futures.add(executor.submit(() -> executed.add("medium"), 3));
+        futures.add(executor.submit(() -> executed.add("second big"), 5));
+        blocked.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // then
+        assertThat(executed).containsExactly("big", "second big", "medium", "small", "unsized");
+    }
+}
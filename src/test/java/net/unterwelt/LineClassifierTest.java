@@ -0,0 +1,82 @@
+package net.unterwelt;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.*;
+import java.util.stream.*;
+import net.unterwelt.rules.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.*;
+import org.junit.jupiter.params.provider.*;
+
+class LineClassifierTest {
+
+    private final SimpleListRule simpleListRule = new SimpleListRule();
+    private final NumeratedListRule numeratedListRule = new NumeratedListRule();
+    private final LineClassifier classifier = new LineClassifier(new HeadingRule(),
+            List.of(simpleListRule, numeratedListRule), new TableRule());
+
+    @ParameterizedTest
+    @MethodSource("provideForHeadings")
+    void testHeading(String line, int expectedSignifierCount) {
+        // when
+        LineClassifier.LineDescriptor descriptor = classifier.classify(line);
+
+        // then
+        assertThat(descriptor.isHeading()).isEqualTo(expectedSignifierCount > 0);
+        assertThat(descriptor.getHeadingSignifierCount()).isEqualTo(expectedSignifierCount);
+    }
+
+    private static Stream<Arguments> provideForHeadings() {
+        return Stream.of(
+                Arguments.of("== heading ==", 2),
+                Arguments.of("==== heading ====", 4),
+                Arguments.of("=== uneven ==", 0),
+                Arguments.of("==no space==", 0),
+                Arguments.of("plain text", 0),
+                Arguments.of("", 0)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideForListItems")
+    void testListItem(String line, String expectedRule, int expectedIndentation,
+                      String expectedContent) {
+        // when
+        LineClassifier.LineDescriptor descriptor = classifier.classify(line);
+
+        // then
+        assertThat(descriptor.isListItem()).isTrue();
+        assertThat(descriptor.getListRule().getClass().getSimpleName()).isEqualTo(expectedRule);
+        assertThat(descriptor.getIndentation()).isEqualTo(expectedIndentation);
+        assertThat(line.substring(descriptor.getContentStart(), descriptor.getContentEnd()))
+                .isEqualTo(expectedContent);
+    }
+
+    private static Stream<Arguments> provideForListItems() {
+        return Stream.of(
+                Arguments.of(" * item", "SimpleListRule", 1, "item"),
+                Arguments.of("   * item  ", "SimpleListRule", 3, "item"),
+                Arguments.of("  1. item", "NumeratedListRule", 2, "item"),
+                Arguments.of(" a. item", "NumeratedListRule", 1, "item"),
+                Arguments.of(" \ti. item", "NumeratedListRule", 2, "item")
+        );
+    }
+
+    @Test
+    void testNoListItem() {
+        assertThat(classifier.classify("* no indentation").isListItem()).isFalse();
+        assertThat(classifier.classify(" *no space").isListItem()).isFalse();
+        assertThat(classifier.classify(" * ").isListItem()).isFalse();
+        assertThat(classifier.classify(" plain").isListItem()).isFalse();
+    }
+
+    @Test
+    void testTableRowAndBlank() {
+        assertThat(classifier.classify("||cell||").isTableRow()).isTrue();
+        assertThat(classifier.classify(" ||cell||").isTableRow()).isFalse();
+        assertThat(classifier.classify("||cell").isTableRow()).isFalse();
+        assertThat(classifier.classify("").isBlank()).isTrue();
+        assertThat(classifier.classify(" ").isBlank()).isFalse();
+    }
+}
@@ -0,0 +1,69 @@
+package net.unterwelt;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.*;
+import java.util.stream.*;
+import org.junit.jupiter.params.*;
+import org.junit.jupiter.params.provider.*;
+
+public class MinimalMarkupParserTest {
+
+    @ParameterizedTest
+    @MethodSource("provideForMinimalMarkup")
+    void testMinimalMarkup(String original, String expected) {
+        // given
+        Parser parser = new Parser(false, false, EnumSet.of(ParserOption.MINIMAL_MARKUP));
+
+        // when
+        String converted = parser.parse(original, "pageName");
+
+        // then
+        assertThat(converted).isEqualTo(expected);
+    }
+
+    private static Stream<Arguments> provideForMinimalMarkup() {
+        return Stream.of(
+                Arguments.of("'''bold'''normal",
+                        "**bold**normal"),
+                Arguments.of("'''a''''''b'''",
+                        "**ab**"),
+                Arguments.of("normal'''bold continued\n\nstill continued'''normal",
+                        "normal**bold continued**\n\n**still continued**normal"),
+                Arguments.of("'''bold ''italics'''''",
+                        "**bold //italics//**"),
+                Arguments.of("''italics '''bold'' bold'''",
+                        "//italics **bold**//** bold**"),
+                Arguments.of("'''bold {{{no wiki}}} bold'''",
+                        "**bold **<nowiki>no wiki</nowiki>** bold**"),
+                Arguments.of("'''bold{{{}}}bold'''",
+                        "**boldbold**"),
+                Arguments.of("'''''''''",
+                        "")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideForSameAsDefault")
+    void testSameAsDefault(String original) {
+        // given
+        Parser defaultParser = new Parser(false, true);
+        Parser minimalParser = new Parser(false, true, EnumSet.of(ParserOption.MINIMAL_MARKUP));
+
+        // when
+        String expected = defaultParser.parse(original, "pageName");
+        String converted = minimalParser.parse(original, "pageName");
+
+        // then
+        assertThat(converted).isEqualTo(expected);
+    }
+
+    private static Stream<Arguments> provideForSameAsDefault() {
+        return Stream.of(
+                Arguments.of("normal [[link]] ''italics'' normal"),
+                Arguments.of(" * list ''item\n * second'' item"),
+                Arguments.of("||cell ''one''||<-2>cell two||"),
+                Arguments.of("== heading ==\n{{{#!highlight java\ncode\n}}}")
+        );
+    }
+}
@@ -162,4 +162,126 @@ class MoinMoinPagesCrawlerTest {
         assertThat(parenthesesPage.getSuperPages().size()).isEqualTo(0);
         assertThat(parenthesesPage.getName()).isEqualTo("regular(inParentheses)regular2");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testReleasedContentIsReadAgain() throws IOException {
+        // given
+        PageDirBuilder.create(pathToMoinMoinPages, "lazy_page").withContent("before").build();
+        Path revision = pathToMoinMoinPages.resolve(Paths.get("lazy_page", "revisions", "00000001"));
+
+        // when
+        List<Page> pages = new MoinMoinPagesCrawler(pathToMoinMoinPages, inputCharset).crawl();
+        Files.writeString(revision, "after");
+        List<String> content = pages.get(0).getContent();
+        pages.get(0).releaseContent();
+        Files.writeString(revision, "reloaded");
+
+        // then
+        assertThat(content).containsExactly("before\n");
+        assertThat(pages.get(0).getContent()).containsExactly("reloaded\n");
+    }
+
+    @Test
+    void testLineBreaks() {
+        // given
+        PageDirBuilder.create(pathToMoinMoinPages, "line_breaks")
+                .withContent("unix\nwindows\r\nmac\r\n\rlast").build();
+
+        // when
+        List<Page> readPages = new MoinMoinPagesCrawler(pathToMoinMoinPages, inputCharset).crawl();
+
+        // then
+        assertThat(readPages.get(0).getContent())
+                .containsExactly("unix\n", "windows\n", "mac\n", "\n", "last\n");
+    }
+
+    @Test
+    void testMalformedContent() throws IOException {
+        // given
+        PageDirBuilder.create(pathToMoinMoinPages, "malformed").build();
+        Files.write(pathToMoinMoinPages.resolve(Paths.get("malformed", "revisions", "00000001")),
+                new byte[]{'b', (byte) 0xff, 'd'});
+
+        // when
+        List<Page> reportedPages = new MoinMoinPagesCrawler(pathToMoinMoinPages,
+                StandardCharsets.UTF_8, CodingErrorAction.REPORT).crawl();
+        List<Page> replacedPages = new MoinMoinPagesCrawler(pathToMoinMoinPages,
+                StandardCharsets.UTF_8, CodingErrorAction.REPLACE).crawl();
+
+        // then
+        assertThat(reportedPages).isEmpty();
+        assertThat(replacedPages.get(0).getContent()).containsExactly("b\ufffdd\n");
+    }
+
+    @Test
+    void testDeletedPagesAndFiles() throws IOException {
+        // given
+        PageDirBuilder.create(pathToMoinMoinPages, "deleted").build();
+        PageDirBuilder.create(pathToMoinMoinPages, "empty_current").build();
+        PageDirBuilder.create(pathToMoinMoinPages, "page").build();
+        Files.delete(pathToMoinMoinPages.resolve(Paths.get("deleted", "current")));
+        Files.write(pathToMoinMoinPages.resolve(Paths.get("empty_current", "current")),
+                new byte[0]);
+        Files.createFile(pathToMoinMoinPages.resolve("file"));
+        MoinMoinPagesCrawler crawler = new MoinMoinPagesCrawler(pathToMoinMoinPages, inputCharset);
+
+        // when
+        List<File> pageDirs = crawler.findPageDirs();
+        List<String> messages = new ArrayList<>();
+        for (File pageDir : pageDirs) {
+            crawler.readPage(pageDir, messages::add);
+        }
+
+        // then
+        assertThat(pageDirs).extracting(File::getName)
+                .containsExactly("deleted", "empty_current", "page");
+        assertThat(messages).filteredOn(message -> message.contains("NOT FOUND")).hasSize(1);
+        assertThat(messages).contains("Skipped (no content): empty_current", "Created: [] - page");
+    }
+
+    /**
+     * Symbolic links to page directories and to the pages directory itself must be followed.
+     */
+    @Test
+    void testSymbolicLinks() throws IOException {
+        // given
+        Path otherPages = testDir.resolve("other");
+        PageDirBuilder.create(otherPages, "linked").withContent("linked page").build();
+        PageDirBuilder.create(pathToMoinMoinPages, "page").build();
+        Files.createSymbolicLink(pathToMoinMoinPages.resolve("linked"),
+                otherPages.resolve("linked").toAbsolutePath());
+        Files.createSymbolicLink(pathToMoinMoinPages.resolve("broken"),
+                testDir.resolve("missing").toAbsolutePath());
+        Path linkedPagesDir = testDir.resolve("linkedPages");
+        Files.createSymbolicLink(linkedPagesDir, pathToMoinMoinPages.toAbsolutePath());
+
+        // when
+        List<Page> pages = new MoinMoinPagesCrawler(pathToMoinMoinPages, inputCharset).crawl();
+        List<File> pageDirs = new MoinMoinPagesCrawler(linkedPagesDir, inputCharset)
+                .findPageDirs();
+
+        // then
+        assertThat(pages).extracting(Page::getName).containsExactly("linked", "page");
+        assertThat(pages.get(0).getContent()).containsExactly("linked page\n");
+        assertThat(pageDirs).extracting(File::getName).containsExactly("linked", "page");
+    }
+
+    @Test
+    void testCountsReadBytes() throws IOException {
+        // given
+        PageDirBuilder.create(pathToMoinMoinPages, "first").withContent("12345").build();
+        PageDirBuilder.create(pathToMoinMoinPages, "second").withContent("123").build();
+        IoThrottle ioThrottle = IoThrottle.unlimited();
+        MoinMoinPagesCrawler crawler = new MoinMoinPagesCrawler(pathToMoinMoinPages, inputCharset,
+                CodingErrorAction.REPORT, ioThrottle);
+
+        // when
+        crawler.crawl();
+
+        // then
+        long currentBytes = Files.size(pathToMoinMoinPages.resolve(Paths.get("first", "current")))
+                + Files.size(pathToMoinMoinPages.resolve(Paths.get("second", "current")));
+        assertThat(ioThrottle.getReadBytes()).isEqualTo(currentBytes + 5 + 3);
+        assertThat(ioThrottle.getOperations()).isEqualTo(4);
+    }
+}
@@ -0,0 +1,68 @@
+package net.unterwelt;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+
+class OutputDirectoriesTest {
+
+    private static final Path testDir = Paths.get("testDirForOutputDirectories");
+
+    @BeforeEach
+    void setUp() {
+        deleteTestDir();
+    }
+
+    @AfterEach
+    void tearDown() {
+        deleteTestDir();
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private void deleteTestDir() {
+        try {
+            Files.walk(testDir)
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        } catch (NoSuchFileException e) {
+            // ignore
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Test
+    void testCreateWithAncestors() throws IOException {
+        // given
+        OutputDirectories outputDirectories = new OutputDirectories();
+        Path dir = testDir.resolve(Paths.get("pages", "a", "b", "c"));
+
+        // when
+        outputDirectories.create(dir);
+        outputDirectories.create(dir);
+        outputDirectories.create(dir.resolveSibling("d"));
+
+        // then
+        assertThat(dir).isDirectory();
+        assertThat(dir.resolveSibling("d")).isDirectory();
+    }
+
+    @Test
+    void testCreateFailsForFile() throws IOException {
+        // given
+        OutputDirectories outputDirectories = new OutputDirectories();
+        Files.createDirectories(testDir);
+        Files.createFile(testDir.resolve("file"));
+
+        // when
+        Throwable thrown = catchThrowable(() ->
+                outputDirectories.create(testDir.resolve(Paths.get("file", "sub"))));
+
+        // then
+        assertThat(thrown).isInstanceOf(FileAlreadyExistsException.class);
+    }
+}
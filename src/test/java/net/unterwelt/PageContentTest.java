@@ -0,0 +1,32 @@
+package net.unterwelt;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.*;
+import java.util.*;
+import org.junit.jupiter.params.*;
+import org.junit.jupiter.params.provider.*;
+
+class PageContentTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"Grüße", "€uro", ""})
+    void testLinesStayTheSame(String word) throws IOException {
+        // given
+        List<String> lines = List.of("first " + word + "\n", "\n", "last" + word);
+
+        // when
+        PageContent content = PageContent.of(lines);
+
+        // then
+        assertThat(content.asStrings()).isEqualTo(lines);
+        assertThat(content.asCharSequences()).extracting(CharSequence::toString).isEqualTo(lines);
+        assertThat(content.asCharSequences().get(0).subSequence(6, 6 + word.length()).toString())
+                .isEqualTo(word);
+        try (Reader reader = new PageContentReader(content)) {
+            StringWriter text = new StringWriter();
+            reader.transferTo(text);
+            assertThat(text.toString()).isEqualTo(String.join("", lines));
+        }
+    }
+}
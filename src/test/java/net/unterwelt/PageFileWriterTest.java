@@ -0,0 +1,263 @@
+package net.unterwelt;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.*;
+import org.junit.jupiter.params.provider.*;
+
+class PageFileWriterTest {
+
+    private static final Path testDir = Paths.get("testDirForPageFileWriter");
+
+    @BeforeEach
+    void setUp() throws IOException {
+        deleteTestDir();
+        Files.createDirectories(testDir);
+    }
+
+    @AfterEach
+    void tearDown() {
+        deleteTestDir();
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private void deleteTestDir() {
+        try {
+            Files.walk(testDir)
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        } catch (NoSuchFileException e) {
+            // ignore
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The pooled buffers must give the same bytes as a BufferedWriter, also for pages bigger than
+     * the buffers and characters split between two buffer fills.
+     */
+    @ParameterizedTest
+    @EnumSource(PageFileWriter.Sync.class)
+    void testSameBytesAsBufferedWriter(PageFileWriter.Sync sync) throws IOException {
+        // given
+        PageFileWriter writer = new PageFileWriter(sync);
+        String[] contents = {"", "ascii\n", "äöü €\n", "x" + "ä€𝄞".repeat(50_000)};
+
+        for (int i = 0; i < contents.length; i++) {
+            Path expectedFile = testDir.resolve("expected" + i);
+            Path file = testDir.resolve("page" + i);
+            try (BufferedWriter expected = Files.newBufferedWriter(expectedFile,
+                    StandardCharsets.UTF_8)) {
+                expected.write(contents[i]);
+            }
+
+            // when
+            writer.write(file, contents[i], StandardOpenOption.CREATE_NEW);
+            writer.written(file);
+
+            // then
+            assertThat(Files.readAllBytes(file)).isEqualTo(Files.readAllBytes(expectedFile));
+        }
+        writer.syncWritten();
+    }
+
+    /**
+     * A page converted straight into the file must give the same bytes as writing it at once, also
+     * when a surrogate pair is split between two fills of the char buffer.
+     */
+    @ParameterizedTest
+    @EnumSource(PageFileWriter.Sync.class)
+    void testNewWriterSameBytesAsWrite(PageFileWriter.Sync sync) throws IOException {
+        // given
+        PageFileWriter writer = new PageFileWriter(sync);
+        String content = "x" + "ä€𝄞".repeat(50_000) + "\n";
+        Path expectedFile = testDir.resolve("expected");
+        Path file = testDir.resolve("page");
+        writer.write(expectedFile, content + "!", StandardOpenOption.CREATE_NEW);
+
+        // when
+        try (Writer out = writer.newWriter(file, StandardOpenOption.CREATE_NEW)) {
+            for (int i = 0; i < content.length(); i += 1000) {
+                out.write(content, i, Math.min(1000, content.length() - i));
+                out.write(new char[0]);
+            }
+            out.flush();
+            out.write('!');
+        }
+        writer.written(file);
+        writer.syncWritten();
+
+        // then
+        assertThat(Files.readAllBytes(file)).isEqualTo(Files.readAllBytes(expectedFile));
+        assertThat(writer.getPooledBuffers()).isEqualTo(1);
+    }
+
+    @Test
+    void testNewWriterLoneSurrogateFails() {
+        // given
+        PageFileWriter writer = new PageFileWriter(PageFileWriter.Sync.NONE);
+
+        // when
+        Throwable thrown = catchThrowable(() -> {
+            try (Writer out = writer.newWriter(testDir.resolve("page.txt"),
+                    StandardOpenOption.CREATE_NEW)) {
+                out.write("lone \uD834");
+            }
+        });
+
+        // then
+        assertThat(thrown).isInstanceOf(CharacterCodingException.class);
+        assertThat(writer.getPooledBuffers()).isEqualTo(1);
+    }
+
+    /**
+     * A replaced page keeps its permissions, which may be read-only.
+     */
+    @Test
+    void testSyncReadOnlyFile() throws IOException {
+        // given
+        Assumptions.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews()
+                .contains("posix"));
+        PageFileWriter writer = new PageFileWriter(PageFileWriter.Sync.END);
+        Path file = testDir.resolve("page.txt");
+        writer.write(file, "page\n", StandardOpenOption.CREATE_NEW);
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("r--r--r--"));
+        writer.written(file);
+
+        // when
+        writer.syncWritten();
+
+        // then
+        assertThat(file).hasContent("page");
+    }
+
+    @Test
+    void testLoneSurrogateFails() {
+        // given
+        PageFileWriter writer = new PageFileWriter(PageFileWriter.Sync.NONE);
+
+        // when
+        Throwable thrown = catchThrowable(() -> writer.write(testDir.resolve("page.txt"),
+                "lone \uD834 surrogate\n", StandardOpenOption.CREATE_NEW));
+
+        // then
+        assertThat(thrown).isInstanceOf(CharacterCodingException.class);
+    }
+
+    @Test
+    void testCreateNewFailsForExistingFile() throws IOException {
+        // given
+        PageFileWriter writer = new PageFileWriter(PageFileWriter.Sync.NONE);
+        Path file = testDir.resolve("page.txt");
+        Files.writeString(file, "old");
+
+        // when
+        Throwable thrown = catchThrowable(() ->
+                writer.write(file, "new", StandardOpenOption.CREATE_NEW));
+
+        // then
+        assertThat(thrown).isInstanceOf(FileAlreadyExistsException.class);
+        assertThat(file).hasContent("old");
+    }
+
+    @Test
+    void testWriteBytesReplacesContent() throws IOException {
+        // given
+        PageFileWriter writer = new PageFileWriter(PageFileWriter.Sync.FILE);
+        Path file = testDir.resolve("page.txt");
+        Files.writeString(file, "old and longer");
+
+        // when
+        writer.write(file, "new".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        // then
+        assertThat(file).hasContent("new");
+    }
+
+    @Test
+    void testPoolKeepsMaxBuffers() throws Exception {
+        // given
+        int threads = 8;
+        CyclicBarrier allWriting = new CyclicBarrier(threads);
+        PageFileWriter writer = new PageFileWriter(PageFileWriter.Sync.NONE,
+                IoThrottle.unlimited(), 2);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // when
+        List<Future<?>> writes = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                Path file = testDir.resolve("page" + i);
+                CharSequence content = new WaitingContent("page " + i + "\n", allWriting);
+                writes.add(executor.submit(() -> {
+                    writer.write(file, content, StandardOpenOption.CREATE_NEW);
+                    return null;
+                }));
+            }
+            for (Future<?> write : writes) {
+                write.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // then
+        assertThat(writer.getPooledBuffers()).isEqualTo(2);
+        for (int i = 0; i < threads; i++) {
+            assertThat(testDir.resolve("page" + i)).hasContent("page " + i + "\n");
+        }
+    }
+
+    /**
+     * Content whose encoding waits until all threads encode, so each thread holds its own
+     * buffers at the same time.
+     */
+    private static class WaitingContent implements CharSequence {
+        private final String content;
+        private final CyclicBarrier allWriting;
+        private boolean waited = false;
+
+        private WaitingContent(String content, CyclicBarrier allWriting) {
+            this.content = content;
+            this.allWriting = allWriting;
+        }
+
+        @Override
+        public int length() {
+            return content.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (!waited) {
+                waited = true;
+                try {
+                    allWriting.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return content.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return content.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return content;
+        }
+    }
+}
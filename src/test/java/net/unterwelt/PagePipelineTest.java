@@ -0,0 +1,415 @@
+package net.unterwelt;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import java.util.stream.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.*;
+import org.junit.jupiter.params.provider.*;
+
+class PagePipelineTest {
+
+    private static final Path testDir = Paths.get("testDirForPipeline");
+    private static final Path pathToMoinMoinPages =
+            testDir.resolve(Paths.get("MoinMoin", "wiki", "data", "pages"));
+    private static final Charset inputCharset = StandardCharsets.UTF_8;
+
+    @BeforeEach
+    void setUp() {
+        deleteTestDir();
+    }
+
+    @AfterEach
+    void tearDown() {
+        deleteTestDir();
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private void deleteTestDir() {
+        try {
+            Files.walk(testDir)
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        } catch (NoSuchFileException e) {
+            // ignore
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Test
+    void testSameResultAsSeparateSteps() throws IOException {
+        assertSameResultAsSeparateSteps(0, dokuWikiWriter -> dokuWikiWriter);
+    }
+
+    /**
+     * Pages converted straight into temporary files must give the same files, and no temporary
+     * file may be left.
+     */
+    @Test
+    void testSameResultWithSpooledPages() throws IOException {
+        assertSameResultAsSeparateSteps(0, 0, dokuWikiWriter -> dokuWikiWriter);
+    }
+
+    @Test
+    void testSameResultOnVirtualThreads() throws IOException {
+        // given
+        Assumptions.assumeTrue(WorkerThreads.areVirtualThreadsAvailable());
+        Set<Boolean> writtenOnVirtualThread = ConcurrentHashMap.newKeySet();
+
+        // when
+        assertSameResultAsSeparateSteps(16, dokuWikiWriter -> new PageSink() {
+            @Override
+            public void write(Path outputPath, String content) throws IOException {
+                writtenOnVirtualThread.add(isVirtual(Thread.currentThread()));
+                dokuWikiWriter.write(outputPath, content);
+            }
+
+            @Override
+            public void close() throws IOException {
+                dokuWikiWriter.close();
+            }
+        });
+
+        // then
+        assertThat(writtenOnVirtualThread).containsExactly(true);
+    }
+
+    @Test
+    void testFallbackWithoutVirtualThreads() throws IOException {
+        // given
+        Assumptions.assumeFalse(WorkerThreads.areVirtualThreadsAvailable());
+        PrintStream standardOut = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // when
+        System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+        try {
+            assertSameResultAsSeparateSteps(16, dokuWikiWriter -> dokuWikiWriter);
+        } finally {
+            System.setOut(standardOut);
+        }
+
+        // then
+        assertThat(out.toString(StandardCharsets.UTF_8)).contains("Virtual threads are not "
+                + "available in Java " + Runtime.version().feature() + ", using 2 threads for "
+                + "reading and writing");
+    }
+
+    /**
+     * Run the pipeline with 3 threads, 2 I/O threads and the virtual threads, writing through the
+     * page sink, and compare it with crawling, checking and writing the pages one after the other.
+     */
+    private void assertSameResultAsSeparateSteps(int virtualThreads,
+                                                 Function<DokuWikiWriter, PageSink> pageSink)
+            throws IOException {
+        assertSameResultAsSeparateSteps(virtualThreads,
+                PagePipeline.DEFAULT_MIN_SPOOLED_SOURCE_SIZE, pageSink);
+    }
+
+    private void assertSameResultAsSeparateSteps(int virtualThreads, long spoolPagesFrom,
+                                                 Function<DokuWikiWriter, PageSink> pageSink)
+            throws IOException {
+        // given
+        for (int i = 0; i < 40; i++) {
+            PageDirBuilder.create(pathToMoinMoinPages, "page" + i)
+                    .withSuperPages("super" + i % 4)
+                    .withContent("'''bold''' line " + i + "\n * item with [[Link]]\n== heading ==")
+                    .build();
+        }
+        PageDirBuilder.create(pathToMoinMoinPages, "broken(2").build();
+        IncompatibilityLogger logger =
+                new IncompatibilityLogger(IncompatibilityLogger.readIncompatibilities(null));
+        MoinMoinPagesCrawler crawler = new MoinMoinPagesCrawler(pathToMoinMoinPages, inputCharset);
+        Path separateDir = testDir.resolve("separate");
+        Path pipelineDir = testDir.resolve("pipeline");
+
+        // when
+        List<Page> pages = crawler.crawl();
+        String expectedWarnings = logger.check(pages, "0.1.test", false);
+        int expectedCount = new DokuWikiWriter(separateDir, false, true).write(pages);
+
+        DokuWikiWriter dokuWikiWriter = new DokuWikiWriter(pipelineDir, false, true);
+        PagePipeline pipeline = new PagePipeline(crawler, logger, dokuWikiWriter, 3, 2,
+                virtualThreads, 2);
+        pipeline.spoolPagesFrom(spoolPagesFrom);
+        int count;
+        try (PageSink sink = pageSink.apply(dokuWikiWriter)) {
+            pipeline.writeTo(sink);
+            count = pipeline.run("0.1.test", false);
+        }
+
+        // then
+        assertThat(pages).hasSize(40);
+        assertThat(count).isEqualTo(expectedCount).isEqualTo(40);
+        assertThat(pipeline.getReadPages()).isEqualTo(40);
+        assertThat(readFiles(pipelineDir)).isEqualTo(readFiles(separateDir));
+        assertThat(pipeline.getReport()).isEqualTo(expectedWarnings);
+    }
+
+    @Test
+    void testAutoTuning() throws IOException {
+        // given
+        for (int i = 0; i < 200; i++) {
+            PageDirBuilder.create(pathToMoinMoinPages, "page" + i)
+                    .withContent("'''bold''' line " + i + "\n".repeat(i)).build();
+        }
+        IncompatibilityLogger logger =
+                new IncompatibilityLogger(IncompatibilityLogger.readIncompatibilities(null));
+        MoinMoinPagesCrawler crawler = new MoinMoinPagesCrawler(pathToMoinMoinPages, inputCharset);
+        Path separateDir = testDir.resolve("separate");
+        Path pipelineDir = testDir.resolve("pipeline");
+        new DokuWikiWriter(separateDir, false, false).write(crawler.crawl());
+
+        // when
+        PagePipeline pipeline = new PagePipeline(crawler, logger,
+                new DokuWikiWriter(pipelineDir, false, false), 1, 1, 4);
+        pipeline.enableAutoTuning(1);
+        int count = pipeline.run("0.1.test", false);
+
+        // then
+        assertThat(count).isEqualTo(200);
+        assertThat(readFiles(pipelineDir)).isEqualTo(readFiles(separateDir));
+        assertThat(pipeline.getFinalSettings()).containsOnlyKeys("read", "parse", "write")
+                .allSatisfy((stage, threads) -> assertThat(threads).isPositive());
+    }
+
+    /**
+     * Pages bigger than the limit must still be written, one at a time.
+     */
+    @Test
+    void testLimitPendingOutput() throws IOException {
+        // given
+        for (int i = 0; i < 20; i++) {
+            PageDirBuilder.create(pathToMoinMoinPages, "page" + i)
+                    .withContent("line " + i + "\n".repeat(i * 10)).build();
+        }
+        IncompatibilityLogger logger =
+                new IncompatibilityLogger(IncompatibilityLogger.readIncompatibilities(null));
+        MoinMoinPagesCrawler crawler = new MoinMoinPagesCrawler(pathToMoinMoinPages, inputCharset);
+        Path separateDir = testDir.resolve("separate");
+        Path pipelineDir = testDir.resolve("pipeline");
+
+        // when
+        new DokuWikiWriter(separateDir, false, false).write(crawler.crawl());
+        PagePipeline pipeline = new PagePipeline(crawler, logger,
+                new DokuWikiWriter(pipelineDir, false, false), 3, 3, 4);
+        pipeline.limitPendingOutput(50);
+        int count = pipeline.run("0.1.test", false);
+
+        // then
+        assertThat(count).isEqualTo(20);
+        assertThat(readFiles(pipelineDir)).isEqualTo(readFiles(separateDir));
+    }
+
+    /**
+     * An Error must end the run instead of leaving the other stages waiting for each other.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void testErrorEndsRun(boolean inCommit) {
+        // given
+        for (int i = 0; i < 100; i++) {
+            PageDirBuilder.create(pathToMoinMoinPages, "page" + i).build();
+        }
+        IncompatibilityLogger logger =
+                new IncompatibilityLogger(IncompatibilityLogger.readIncompatibilities(null));
+        MoinMoinPagesCrawler crawler = new MoinMoinPagesCrawler(pathToMoinMoinPages, inputCharset);
+        PagePipeline pipeline = new PagePipeline(crawler, logger,
+                new DokuWikiWriter(testDir.resolve("pipeline"), false, false), 2, 2, 2);
+        OutOfMemoryError error = new OutOfMemoryError("Direct buffer memory");
+        pipeline.writeTo(new PageSink() {
+            @Override
+            public void write(Path outputPath, String content) {
+                if (!inCommit && outputPath.endsWith("page3.txt")) {
+                    throw error;
+                }
+            }
+
+            @Override
+            public void commit(Path outputPath) {
+                if (inCommit && outputPath.endsWith("page3.txt")) {
+                    throw error;
+                }
+            }
+        });
+
+        // when
+        Throwable thrown = assertTimeoutPreemptively(Duration.ofSeconds(30),
+                () -> catchThrowable(() -> pipeline.run("0.1.test", false)));
+
+        // then
+        assertThat(thrown).isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("write").hasCause(error);
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void testFirstPageWinsOutputFile(boolean spooled) throws IOException {
+        // given
+        PageDirBuilder.create(pathToMoinMoinPages, "Same").withContent("first").build();
+        PageDirBuilder.create(pathToMoinMoinPages, "same").withContent("second").build();
+        PageDirBuilder.create(pathToMoinMoinPages, "third").withContent("third").build();
+        IncompatibilityLogger logger =
+                new IncompatibilityLogger(IncompatibilityLogger.readIncompatibilities(null));
+        MoinMoinPagesCrawler crawler = new MoinMoinPagesCrawler(pathToMoinMoinPages, inputCharset);
+        Path pipelineDir = testDir.resolve("pipeline");
+
+        PagePipeline pipeline = new PagePipeline(crawler, logger,
+                new DokuWikiWriter(pipelineDir, false, false), 2, 2, 2);
+        pipeline.spoolPagesFrom(spooled ? 0 : Long.MAX_VALUE);
+
+        // when
+        int count = pipeline.run("0.1.test", false);
+
+        // then
+        assertThat(count).isEqualTo(2);
+        assertThat(readFiles(pipelineDir)).containsOnly(
+                entry(Paths.get("same.txt"), "first\n"), entry(Paths.get("third.txt"), "third\n"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"pages.zip", "pages.tar", "pages.tar.gz"})
+    void testWriteIntoArchive(String archiveName) throws IOException {
+        // given
+        for (int i = 0; i < 40; i++) {
+            PageDirBuilder.create(pathToMoinMoinPages, "page" + i)
+                    .withSuperPages("super" + i % 4)
+                    .withContent("'''bold''' line " + i + "\n".repeat(i)).build();
+        }
+        PageDirBuilder.create(pathToMoinMoinPages, "long" + "(20)name".repeat(20)).build();
+        IncompatibilityLogger logger =
+                new IncompatibilityLogger(IncompatibilityLogger.readIncompatibilities(null));
+        MoinMoinPagesCrawler crawler = new MoinMoinPagesCrawler(pathToMoinMoinPages, inputCharset);
+        Path pipelineDir = testDir.resolve("pipeline");
+        Path archiveDir = testDir.resolve("archive");
+        Files.createDirectories(archiveDir);
+
+        // when
+        new PagePipeline(crawler, logger, new DokuWikiWriter(pipelineDir, false, true), 3, 2, 2)
+                .run("0.1.test", false);
+        List<Map.Entry<Path, String>> entries = new ArrayList<>();
+        for (int threads = 1; threads <= 4; threads += 3) {
+            Path archive = archiveDir.resolve(threads + archiveName);
+            Path archivePagesDir = archiveDir.resolve("pages");
+            PagePipeline pipeline = new PagePipeline(crawler, logger,
+                    new DokuWikiWriter(archivePagesDir, false, true), threads, threads, 2);
+            IoThrottle ioThrottle = IoThrottle.unlimited();
+            try (ArchivePageSink pageSink =
+                         new ArchivePageSink(archive, archivePagesDir, ioThrottle)) {
+                pipeline.writeTo(pageSink);
+                assertThat(pipeline.run("0.1.test", false)).isEqualTo(41);
+            }
+            assertThat(archivePagesDir).doesNotExist();
+            assertThat(ioThrottle.getOperations()).isEqualTo(41);
+            entries.addAll(readArchive(archive));
+        }
+
+        // then
+        List<Map.Entry<Path, String>> firstRun = entries.subList(0, 41);
+        List<Map.Entry<Path, String>> secondRun = entries.subList(41, entries.size());
+        assertThat(secondRun).containsExactlyElementsOf(firstRun);
+        assertThat(firstRun).containsExactlyInAnyOrderElementsOf(
+                readFiles(pipelineDir).entrySet());
+    }
+
+    @Test
+    void testUpdateExistingPages() throws IOException {
+        // given
+        Assumptions.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews()
+                .contains("posix"));
+        PageDirBuilder.create(pathToMoinMoinPages, "unchanged").withContent("same").build();
+        PageDirBuilder.create(pathToMoinMoinPages, "changed").withContent("old").build();
+        IncompatibilityLogger logger =
+                new IncompatibilityLogger(IncompatibilityLogger.readIncompatibilities(null));
+        MoinMoinPagesCrawler crawler = new MoinMoinPagesCrawler(pathToMoinMoinPages, inputCharset);
+        Path pipelineDir = testDir.resolve("pipeline");
+        DokuWikiWriter dokuWikiWriter = new DokuWikiWriter(pipelineDir, false, false);
+        runUpdate(crawler, logger, dokuWikiWriter);
+
+        FileTime oldTime = FileTime.fromMillis(1_000_000);
+        Files.setLastModifiedTime(pipelineDir.resolve("unchanged.txt"), oldTime);
+        Files.setLastModifiedTime(pipelineDir.resolve("changed.txt"), oldTime);
+        Set<PosixFilePermission> changedPermissions = PosixFilePermissions.fromString("rw-r-----");
+        Files.setPosixFilePermissions(pipelineDir.resolve("changed.txt"), changedPermissions);
+        Path createdFile = Files.createFile(testDir.resolve("created"));
+        Files.writeString(pathToMoinMoinPages.resolve(Paths.get("changed", "revisions",
+                "00000001")), "new");
+        PageDirBuilder.create(pathToMoinMoinPages, "added").withContent("added").build();
+
+        // when
+        UpdatingPageSink pageSink = runUpdate(crawler, logger, dokuWikiWriter);
+
+        // then
+        assertThat(pageSink.getWrittenPages()).isEqualTo(1);
+        assertThat(pageSink.getUnchangedPages()).isEqualTo(1);
+        assertThat(pageSink.getReplacedPages()).isEqualTo(1);
+        assertThat(readFiles(pipelineDir)).containsOnly(entry(Paths.get("unchanged.txt"),
+                "same\n"), entry(Paths.get("changed.txt"), "new\n"),
+                entry(Paths.get("added.txt"), "added\n"));
+        assertThat(Files.getLastModifiedTime(pipelineDir.resolve("unchanged.txt")))
+                .isEqualTo(oldTime);
+        assertThat(Files.getLastModifiedTime(pipelineDir.resolve("changed.txt")))
+                .isNotEqualTo(oldTime);
+        assertThat(Files.getPosixFilePermissions(pipelineDir.resolve("changed.txt")))
+                .isEqualTo(changedPermissions);
+        assertThat(Files.getPosixFilePermissions(pipelineDir.resolve("added.txt")))
+                .isEqualTo(Files.getPosixFilePermissions(createdFile))
+                .contains(PosixFilePermission.OTHERS_READ);
+        assertThat(Files.getPosixFilePermissions(pipelineDir.resolve("unchanged.txt")))
+                .isEqualTo(Files.getPosixFilePermissions(createdFile));
+        try (Stream<Path> files = Files.list(pipelineDir)) {
+            assertThat(files).noneMatch(file -> file.getFileName().toString().endsWith(".tmp"));
+        }
+    }
+
+    private static UpdatingPageSink runUpdate(PageSource pageSource, IncompatibilityLogger logger,
+                                              DokuWikiWriter dokuWikiWriter) {
+        UpdatingPageSink pageSink =
+                new UpdatingPageSink(new PageFileWriter(PageFileWriter.Sync.NONE));
+        PagePipeline pipeline = new PagePipeline(pageSource, logger, dokuWikiWriter, 2, 2, 2);
+        pipeline.writeTo(pageSink);
+        assertThat(pipeline.run("0.1.test", false)).isEqualTo(pipeline.getReadPages());
+        return pageSink;
+    }
+
+    private static List<Map.Entry<Path, String>> readArchive(Path archive) throws IOException {
+        List<Map.Entry<Path, String>> entries = new ArrayList<>();
+        try (ArchiveReader reader = ArchiveReader.open(archive.getFileName().toString(),
+                Files.newInputStream(archive))) {
+            for (String path = reader.nextFile(); path != null; path = reader.nextFile()) {
+                entries.add(Map.entry(Paths.get(path),
+                        new String(reader.readContent(), StandardCharsets.UTF_8)));
+            }
+        }
+        return entries;
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    private static Map<Path, String> readFiles(Path dir) throws IOException {
+        Map<Path, String> files = new HashMap<>();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator) {
+                files.put(dir.relativize(path), Files.readString(path));
+            }
+        }
+        return files;
+    }
+}
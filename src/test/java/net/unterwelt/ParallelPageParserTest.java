@@ -0,0 +1,112 @@
+package net.unterwelt;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.*;
+
+class ParallelPageParserTest {
+
+    private static ExecutorService executor;
+
+    @BeforeAll
+    static void startExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterAll
+    static void stopExecutor() {
+        executor.shutdown();
+    }
+
+    @Test
+    void testSameOutputAsSingleParser() {
+        // given
+        List<String> content = new ArrayList<>();
+        for (String page : ParserEquivalenceTest.createPages()) {
+            for (String line : page.split("\n")) {
+                content.add(line + "\n");
+            }
+        }
+        ParserPool parserPool = new ParserPool(false, true, EnumSet.noneOf(ParserOption.class));
+        ParallelPageParser parallelPageParser =
+                new ParallelPageParser(parserPool, 20, 16, executor);
+
+        for (int start = 0; start < content.size(); start += 97) {
+            List<String> lines = content.subList(start, Math.min(start + 300, content.size()));
+            Parser singleParser = new Parser(false, true);
+            Parser parser = new Parser(false, true);
+
+            // when
+            String expected = parseSequentially(singleParser, lines);
+            String converted = parseInParallel(parallelPageParser, parser, lines);
+
+            // then
+            assertThat(converted).as("converted lines from %d", start).isEqualTo(expected);
+            assertThat(parser.snapshotState()).isEqualTo(singleParser.snapshotState());
+        }
+    }
+
+    @Test
+    void testFormatAcrossChunks() {
+        // given
+        List<String> content = new ArrayList<>();
+        content.add("'''bold starts\n");
+        for (int i = 0; i < 100; i++) {
+            content.add("line " + i + " ''italics''\n");
+            content.add("\n");
+        }
+        content.add("bold ends'''\n");
+        ParserPool parserPool = new ParserPool(false, false, EnumSet.noneOf(ParserOption.class));
+        ParallelPageParser parallelPageParser =
+                new ParallelPageParser(parserPool, 10, 8, executor);
+
+        // when
+        String expected = parseSequentially(new Parser(), content);
+        String converted = parallelPageParser.parse(new Parser(), content, "pageName");
+
+        // then
+        assertThat(converted).isEqualTo(expected).contains("**bold ends**");
+    }
+
+    @Test
+    void testRestoredState() {
+        // given
+        Parser parser = new Parser();
+        parser.parse("'''bold ''italics --(strike\n", "pageName");
+        parser.parse("||<-3>cell\n", "pageName");
+        parser.parse("{{{#!highlight java\n", "pageName");
+        Parser otherParser = new Parser();
+
+        // when
+        otherParser.restoreState(parser.snapshotState());
+
+        // then
+        assertThat(otherParser.snapshotState()).isEqualTo(parser.snapshotState())
+                .isNotEqualTo(new Parser().snapshotState());
+        assertThat(otherParser.parse("code}}}'''\n", "pageName"))
+                .isEqualTo(parser.parse("code}}}'''\n", "pageName"));
+    }
+
+    private static String parseSequentially(Parser parser, List<String> lines) {
+        StringBuilder output = new StringBuilder();
+        try {
+            for (String line : lines) {
+                output.append(parser.parse(line, "pageName"));
+            }
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+        return output.toString();
+    }
+
+    private static String parseInParallel(ParallelPageParser parallelPageParser, Parser parser,
+                                          List<String> lines) {
+        try {
+            return parallelPageParser.parse(parser, lines, "pageName");
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+    }
+}
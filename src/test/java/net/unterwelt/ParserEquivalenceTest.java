@@ -0,0 +1,84 @@
+package net.unterwelt;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.*;
+import java.util.stream.*;
+import org.junit.jupiter.params.*;
+import org.junit.jupiter.params.provider.*;
+
+/**
+ * Optional Parser modes must produce exactly the same output as the default mode, except for the
+ * modes that change the markup on purpose.
+ */
+class ParserEquivalenceTest {
+
+    private static final String[] FRAGMENTS = {
+            "'''", "''", "`", ",,", "^", "--(", ")--", "__", "[[", "]]", "||", "{{{", "}}}",
+            "{{{#!highlight java", "||<-2>", "||<style=\"text-align: right;\">", "/SubPage",
+            "../Sibling", "http://example.com", " ", "  ", "regular text", "äöü", "'", ",", "-",
+            "_", "[", "|", "{", "}", ")", "=="
+    };
+
+    private static final String[] LINE_STARTS = {
+            "", "", "", " * ", "  1. ", " a. ", "= ", "== ", "=== ", "||", " "
+    };
+
+    @ParameterizedTest
+    @MethodSource("provideOptions")
+    void testSameOutput(ParserOption option) {
+        for (String page : createPages()) {
+            // given
+            Parser defaultParser = new Parser(false, true);
+            Parser optionParser = new Parser(false, true, EnumSet.of(option));
+
+            // when
+            String expected = parse(defaultParser, page);
+            String converted = parse(optionParser, page);
+
+            // then
+            assertThat(converted).as("converted with %s: %s", option, page).isEqualTo(expected);
+        }
+    }
+
+    /**
+     * Some combinations of tokens are not supported. The optional modes have to fail in the same
+     * way.
+     */
+    private static String parse(Parser parser, String page) {
+        try {
+            return parser.parse(page, "pageName");
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+    }
+
+    private static Stream<Arguments> provideOptions() {
+        return EnumSet.complementOf(EnumSet.of(ParserOption.MINIMAL_MARKUP)).stream()
+                .map(Arguments::of);
+    }
+
+    static List<String> createPages() {
+        List<String> pages = new ArrayList<>();
+        Random random = new Random(42);
+
+        for (int pageIndex = 0; pageIndex < 200; pageIndex++) {
+            StringBuilder page = new StringBuilder();
+            int lineCount = 1 + random.nextInt(8);
+            for (int lineIndex = 0; lineIndex < lineCount; lineIndex++) {
+                page.append(LINE_STARTS[random.nextInt(LINE_STARTS.length)]);
+                int fragmentCount = random.nextInt(12);
+                for (int i = 0; i < fragmentCount; i++) {
+                    page.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+                }
+                if (random.nextInt(4) == 0) {
+                    page.append(" ==");
+                }
+                page.append("\n");
+            }
+            pages.add(page.toString());
+        }
+
+        return pages;
+    }
+}
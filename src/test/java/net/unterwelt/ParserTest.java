@@ -2,6 +2,7 @@ package net.unterwelt;
 
 import static org.assertj.core.api.Assertions.*;
 
+import java.util.*;
 import java.util.stream.*;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.params.*;
@@ -89,4 +90,56 @@ class ParserTest {
                 Arguments.of("first line\n\nthird line\n", "first line\n\nthird line\n")
         );
     }
+
+    @Test
+    void testFormatsDontContinueOnNextPage() {
+        // given
+        Parser parser = new Parser(false, true);
+        Page firstPage = new Page(Collections.emptyList(), "first",
+                List.of("'''bold {{{\n", "''italics\n"));
+        Page secondPage = new Page(Collections.emptyList(), "second", List.of("plain\n"));
+
+        // when
+        parser.parse(firstPage);
+        String converted = parser.parse(secondPage);
+
+        // then
+        assertThat(converted).isEqualTo("plain\n");
+    }
+
+    @Test
+    void testPooledParsersShareRules() {
+        // given
+        ParserPool parserPool = new ParserPool(false, true, EnumSet.noneOf(ParserOption.class));
+        List<String> pages = ParserEquivalenceTest.createPages();
+        List<String> expected = new ArrayList<>();
+        for (String page : pages) {
+            Parser parser = new Parser(false, true);
+            expected.add(parse(parser, page));
+        }
+
+        // when
+        List<String> converted = pages.parallelStream()
+                .map(page -> {
+                    Parser parser = parserPool.acquire();
+                    try {
+                        parser.reset();
+                        return parse(parser, page);
+                    } finally {
+                        parserPool.release(parser);
+                    }
+                })
+                .collect(Collectors.toList());
+
+        // then
+        assertThat(converted).isEqualTo(expected);
+    }
+
+    private static String parse(Parser parser, String page) {
+        try {
+            return parser.parse(page, "pageName");
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+    }
 }
@@ -0,0 +1,191 @@
+package net.unterwelt;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.*;
+import org.junit.jupiter.params.provider.*;
+
+class RevisionReaderTest {
+
+    private static final Path testDir = Paths.get("testDirForRevisionReader");
+
+    @BeforeEach
+    void setUp() throws IOException {
+        deleteTestDir();
+        Files.createDirectories(testDir);
+    }
+
+    @AfterEach
+    void tearDown() {
+        deleteTestDir();
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private void deleteTestDir() {
+        try {
+            Files.walk(testDir)
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        } catch (NoSuchFileException e) {
+            // ignore
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Mapped and read files must have the same lines as Files.readAllLines, plus line breaks.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {1, RevisionReader.DEFAULT_MAPPING_THRESHOLD})
+    void testSameLinesAsReadAllLines(int mappingThreshold) throws IOException {
+        // given
+        RevisionReader reader = new RevisionReader(StandardCharsets.UTF_8,
+                CodingErrorAction.REPORT, mappingThreshold);
+        String[] texts = {"unix\nwindows\r\nmac\r\n\rlast", "äöü\n\n", "\n", "\r\r\n", "x",
+                "longer line ".repeat(10_000) + "\r\n".repeat(3), "short\n"};
+
+        for (String text : texts) {
+            Path revision = testDir.resolve("revision");
+            Files.writeString(revision, text);
+
+            // when
+            List<String> lines = reader.read(revision).asStrings();
+
+            // then
+            List<String> expected = new ArrayList<>();
+            for (String line : Files.readAllLines(revision)) {
+                expected.add(line + "\n");
+            }
+            assertThat(lines).as("lines of %s", text).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void testReplaceMalformedInput() throws IOException {
+        // given
+        Path revision = testDir.resolve("malformed");
+        Files.write(revision, new byte[]{'o', 'k', '\n', 'b', (byte) 0xff, 'd', '\n'});
+        RevisionReader reader = new RevisionReader(StandardCharsets.UTF_8,
+                CodingErrorAction.REPLACE);
+
+        // when
+        List<String> lines = reader.read(revision).asStrings();
+
+        // then
+        assertThat(lines).containsExactly("ok\n", "b�d\n");
+    }
+
+    @Test
+    void testReportMalformedInput() throws IOException {
+        // given
+        Path revision = testDir.resolve("malformed");
+        Files.write(revision, new byte[]{'o', 'k', '\n', 'b', (byte) 0xff, 'd', '\n'});
+        RevisionReader reader = new RevisionReader(StandardCharsets.UTF_8,
+                CodingErrorAction.REPORT);
+
+        // when
+        Throwable thrown = catchThrowable(() -> reader.read(revision));
+
+        // then
+        assertThat(thrown).isInstanceOf(CharacterCodingException.class);
+    }
+
+    @Test
+    void testPoolKeepsMaxBuffers() throws Exception {
+        // given
+        int threads = 8;
+        CyclicBarrier allDecoding = new CyclicBarrier(threads);
+        RevisionReader reader = new RevisionReader(new WaitingCharset(allDecoding),
+                CodingErrorAction.REPORT, RevisionReader.DEFAULT_MAPPING_THRESHOLD, 2);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // when
+        List<Future<PageContent>> contents = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                ByteBuffer revision = ByteBuffer.wrap(("page " + i + "\n").getBytes());
+                contents.add(executor.submit(() -> reader.decode(revision)));
+            }
+            for (int i = 0; i < threads; i++) {
+                assertThat(contents.get(i).get(30, TimeUnit.SECONDS).asStrings())
+                        .containsExactly("page " + i + "\n");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // then
+        assertThat(reader.getPooledBuffers()).isEqualTo(2);
+    }
+
+    @Test
+    void testPoolDropsGrownBuffers() throws IOException {
+        // given
+        Path revision = testDir.resolve("revision");
+        Files.writeString(revision, "big page line\n".repeat(20_000));
+        RevisionReader reader = new RevisionReader(StandardCharsets.UTF_8,
+                CodingErrorAction.REPORT);
+
+        // when
+        List<String> lines = reader.read(revision).asStrings();
+
+        // then
+        assertThat(lines).hasSize(20_000);
+        assertThat(reader.getPooledBuffers()).isEqualTo(1);
+        assertThat(reader.getPooledDirectBytes()).isEqualTo(64 * 1024);
+    }
+
+    /**
+     * ISO-8859-1, but each decoding waits until all threads decode, so each thread holds its
+     * own buffers at the same time.
+     */
+    private static class WaitingCharset extends Charset {
+        private final CyclicBarrier allDecoding;
+
+        private WaitingCharset(CyclicBarrier allDecoding) {
+            super("X-WAITING-LATIN1", null);
+            this.allDecoding = allDecoding;
+        }
+
+        @Override
+        public boolean contains(Charset charset) {
+            return false;
+        }
+
+        @Override
+        public CharsetDecoder newDecoder() {
+            return new CharsetDecoder(this, 1, 1) {
+                @Override
+                protected CoderResult decodeLoop(ByteBuffer in, CharBuffer out) {
+                    try {
+                        allDecoding.await(30, TimeUnit.SECONDS);
+                    } catch (InterruptedException | BrokenBarrierException
+                            | TimeoutException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    while (in.hasRemaining()) {
+                        if (!out.hasRemaining()) {
+                            return CoderResult.OVERFLOW;
+                        }
+                        out.put((char) (in.get() & 0xff));
+                    }
+                    return CoderResult.UNDERFLOW;
+                }
+            };
+        }
+
+        @Override
+        public CharsetEncoder newEncoder() {
+            return StandardCharsets.ISO_8859_1.newEncoder();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package net.unterwelt;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+
+class StreamingParserTest {
+
+    @Test
+    void testSameOutputAsPageParsing() throws IOException {
+        for (String randomPage : ParserEquivalenceTest.createPages()) {
+            // given
+            List<String> content = new ArrayList<>();
+            for (String line : randomPage.split("\n", -1)) {
+                content.add(line + "\n");
+            }
+            Page page = new Page(Collections.emptyList(), "pageName", content);
+
+            // when
+            String expected = parse(new Parser(true, true), page);
+            String converted = convert(new Parser(true, true), page);
+
+            // then
+            assertThat(converted).as("converted %s", randomPage).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void testLongPage() throws IOException {
+        // given
+        List<String> content = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            content.add(" * ''item'' " + i + " with [[Link]]\n");
+            content.add("\n");
+        }
+        Page page = new Page(Collections.emptyList(), "pageName", content);
+
+        // when
+        String expected = new Parser().parse(page);
+        StringWriter out = new StringWriter();
+        new Parser().convert(page, out);
+
+        // then
+        assertThat(out.toString()).isEqualTo(expected).hasSizeGreaterThan(8192);
+    }
+
+    @Test
+    void testLineBreaks() throws IOException {
+        // given
+        Parser parser = new Parser();
+        StringWriter out = new StringWriter();
+
+        // when
+        parser.convert(new StringReader("'''bold\r\n\r\nstill bold'''\n== heading ==\nlast"), out,
+                new PageContext("pageName"));
+
+        // then
+        assertThat(out.toString())
+                .isEqualTo("**bold**\n\n**still bold**\n====== heading ======\nlast");
+    }
+
+    private static String parse(Parser parser, Page page) {
+        try {
+            return parser.parse(page);
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+    }
+
+    private static String convert(Parser parser, Page page) throws IOException {
+        StringWriter out = new StringWriter();
+        try {
+            parser.convert(page, out);
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+        return out.toString();
+    }
+}
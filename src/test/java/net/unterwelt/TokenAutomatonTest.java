@@ -0,0 +1,56 @@
+package net.unterwelt;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.*;
+
+class TokenAutomatonTest {
+
+    private final TokenAutomaton<String> automaton = new TokenAutomaton<>(List.of(
+            Map.entry("{{{#!highlight ", "highlighting"),
+            Map.entry("{{{", "nowiki"),
+            Map.entry("'''", "bold"),
+            Map.entry("''", "italics"),
+            Map.entry("--(", "strike through start"),
+            Map.entry(")--", "strike through end")
+    ));
+
+    @Test
+    void testLongestTokenFirst() {
+        assertThat(automaton.match("'''bold'''", 0)).containsExactly("bold", "italics");
+        assertThat(automaton.match("''italics''", 0)).containsExactly("italics");
+        assertThat(automaton.match("{{{#!highlight java", 0))
+                .containsExactly("highlighting", "nowiki");
+        assertThat(automaton.match("{{{#!highlight", 0)).containsExactly("nowiki");
+    }
+
+    @Test
+    void testNoMatch() {
+        assertThat(automaton.match("regular", 0)).isEmpty();
+        assertThat(automaton.match("'", 0)).isEmpty();
+        assertThat(automaton.match("--)", 0)).isEmpty();
+        assertThat(automaton.match("äöü", 0)).isEmpty();
+    }
+
+    @Test
+    void testMatchAtOffset() {
+        assertThat(automaton.match("normal --(strike)--", 7)).containsExactly("strike through start");
+        assertThat(automaton.match("normal --(strike)--", 16)).containsExactly("strike through end");
+    }
+
+    @Test
+    void testNextTokenStart() {
+        String line = "plain text, then ''italics''";
+
+        assertThat(automaton.nextTokenStart(line, 0)).isEqualTo(17);
+        assertThat(automaton.nextTokenStart(line, 18)).isEqualTo(18);
+        assertThat(automaton.nextTokenStart("no tokens here", 0)).isEqualTo(14);
+    }
+
+    @Test
+    void testNonAsciiToken() {
+        assertThatIllegalArgumentException().isThrownBy(() ->
+                new TokenAutomaton<>(List.of(Map.entry("ä", "umlaut"))));
+    }
+}
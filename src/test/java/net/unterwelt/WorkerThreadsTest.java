@@ -0,0 +1,78 @@
+package net.unterwelt;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.*;
+
+class WorkerThreadsTest {
+
+    /**
+     * Virtual threads are final in Java 21, the factory method doesn't exist before Java 19.
+     */
+    @Test
+    void testVirtualThreadsAvailableFromJava21() {
+        // given
+        int feature = Runtime.version().feature();
+
+        // when
+        boolean available = WorkerThreads.areVirtualThreadsAvailable();
+
+        // then
+        if (feature >= 21) {
+            assertThat(available).isTrue();
+        } else if (feature < 19) {
+            assertThat(available).isFalse();
+        }
+        assertThat(available).isEqualTo(Arrays.stream(Executors.class.getMethods())
+                .anyMatch(method -> method.getName().equals("newVirtualThreadPerTaskExecutor")));
+    }
+
+    /**
+     * Runs on every Java version: with virtual threads the task runs on one, without them creating
+     * the executor fails with UnsupportedOperationException.
+     */
+    @Test
+    void testNewVirtualThreadsRunsTasksOrIsUnsupported() throws Exception {
+        // given
+        boolean available = WorkerThreads.areVirtualThreadsAvailable();
+
+        // when
+        ExecutorService executor = null;
+        Throwable failure = null;
+        try {
+            executor = WorkerThreads.newVirtualThreads();
+        } catch (UnsupportedOperationException e) {
+            failure = e;
+        }
+
+        // then
+        if (available) {
+            Future<Object> isVirtual = executor.submit(() ->
+                    Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+            assertThat(isVirtual.get(10, TimeUnit.SECONDS)).isEqualTo(true);
+            executor.shutdown();
+            assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        } else {
+            assertThat(executor).isNull();
+            assertThat(failure).isInstanceOf(UnsupportedOperationException.class)
+                    .hasCauseInstanceOf(NoSuchMethodException.class);
+        }
+    }
+
+    @Test
+    void testPlatformThreadsAreNamedDaemons() throws Exception {
+        // given
+        ExecutorService executor = WorkerThreads.newPlatformThreads("worker", 2);
+
+        // when
+        Future<Thread> thread = executor.submit(Thread::currentThread);
+
+        // then
+        assertThat(thread.get(10, TimeUnit.SECONDS).getName()).isEqualTo("worker");
+        assertThat(thread.get().isDaemon()).isTrue();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    }
+}
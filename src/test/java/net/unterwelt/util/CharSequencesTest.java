@@ -0,0 +1,75 @@
+package net.unterwelt.util;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.stream.*;
+import org.junit.jupiter.params.*;
+import org.junit.jupiter.params.provider.*;
+
+class CharSequencesTest {
+
+    @ParameterizedTest
+    @MethodSource("provideForStartsWith")
+    void testStartsWith(String sequence, int offset, String token, boolean expected) {
+        // when
+        boolean inString = CharSequences.startsWith(sequence, offset, token);
+        boolean inBuilder = CharSequences.startsWith(new StringBuilder(sequence), offset, token);
+
+        // then
+        assertThat(inString).isEqualTo(expected);
+        assertThat(inBuilder).isEqualTo(expected);
+    }
+
+    private static Stream<Arguments> provideForStartsWith() {
+        return Stream.of(
+                Arguments.of("'''bold'''", 0, "'''", true),
+                Arguments.of("'''bold'''", 7, "'''", true),
+                Arguments.of("'''bold'''", 8, "'''", false),
+                Arguments.of("'''bold'''", 10, "", true),
+                Arguments.of("'''bold'''", 11, "", false),
+                Arguments.of("'''bold'''", -1, "'''", false)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideForEndsWith")
+    void testEndsWith(String sequence, String token, boolean expected) {
+        // when
+        boolean inString = CharSequences.endsWith(sequence, token);
+        boolean inBuilder = CharSequences.endsWith(new StringBuilder(sequence), token);
+
+        // then
+        assertThat(inString).isEqualTo(expected);
+        assertThat(inBuilder).isEqualTo(expected);
+    }
+
+    private static Stream<Arguments> provideForEndsWith() {
+        return Stream.of(
+                Arguments.of("||cell||", "||", true),
+                Arguments.of("||cell|", "||", false),
+                Arguments.of("|", "||", false),
+                Arguments.of("", "", true)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideForIndexOf")
+    void testIndexOf(String sequence, String token, int fromIndex, int expected) {
+        // when
+        int inString = CharSequences.indexOf(sequence, token, fromIndex);
+        int inBuilder = CharSequences.indexOf(new StringBuilder(sequence), token, fromIndex);
+
+        // then
+        assertThat(inString).isEqualTo(expected);
+        assertThat(inBuilder).isEqualTo(expected);
+    }
+
+    private static Stream<Arguments> provideForIndexOf() {
+        return Stream.of(
+                Arguments.of("[[link]] [[other]]", "]]", 0, 6),
+                Arguments.of("[[link]] [[other]]", "]]", 7, 16),
+                Arguments.of("[[link]] [[other]]", "]]", 17, -1),
+                Arguments.of("[[link]] [[other]]", "]]", -5, 6)
+        );
+    }
+}